@@ -25,6 +25,8 @@
 
 package net.coderazzi.filters;
 
+import java.util.BitSet;
+
 import net.coderazzi.filters.artifacts.RowFilter;
 
 
@@ -58,4 +60,38 @@ public class AndFilter extends ComposedFilter {
 
         return true;
     }
+
+    /**
+     * Batch evaluation; each filter is only evaluated on the rows accepted by
+     * the previous ones.
+     *
+     * @see  RowFilter#includeRows(RowFilter.BatchEntry, int[], int, BitSet)
+     */
+    @Override protected void includeRows(RowFilter.BatchEntry entry,
+                                         int rows[], int count,
+                                         BitSet result) {
+        int candidates[] = rows;
+        BitSet included = null;
+        for (IFilter filter : filters) {
+            if (filter.isEnabled()) {
+                if (included == null) {
+                    candidates = new int[count];
+                    System.arraycopy(rows, 0, candidates, 0, count);
+                    included = new BitSet();
+                } else {
+                    included.clear();
+                }
+
+                include(filter, entry, candidates, count, included);
+                count = retain(candidates, count, included, true);
+                if (count == 0) {
+                    return;
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            result.set(candidates[i]);
+        }
+    }
 }
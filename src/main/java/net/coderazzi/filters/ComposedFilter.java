@@ -25,9 +25,12 @@
 
 package net.coderazzi.filters;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Set;
 
+import net.coderazzi.filters.artifacts.RowFilter;
+
 
 /**
  * <p>Abstract parent class to support the composition of multiple filters.</p>
@@ -139,6 +142,49 @@ abstract public class ComposedFilter extends Filter implements IFilterObserver {
         }
     }
 
+    /**
+     * Evaluates the given filter on the first count rows of the array, using
+     * the batch evaluation if the filter is a {@link RowFilter}.
+     */
+    protected static void include(IFilter              filter,
+                                  RowFilter.BatchEntry entry,
+                                  int                  rows[],
+                                  int                  count,
+                                  BitSet               result) {
+        if (filter instanceof RowFilter) {
+            ((RowFilter) filter).include(entry, rows, count, result);
+        } else {
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                entry.setRow(row);
+                if (filter.include(entry)) {
+                    result.set(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compacts the first count rows of the array, keeping only those whose bit
+     * in the given set has the specified value.
+     *
+     * @return  the number of rows kept
+     */
+    protected static int retain(int    rows[],
+                                int    count,
+                                BitSet set,
+                                boolean value) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            if (set.get(row) == value) {
+                rows[kept++] = row;
+            }
+        }
+
+        return kept;
+    }
+
     /** Returns true if there is information of this filter as disabled. */
     protected boolean isDisabled(IFilter filter) {
         return disabledFilters.contains(filter);
@@ -25,6 +25,8 @@
 
 package net.coderazzi.filters;
 
+import java.util.BitSet;
+
 import net.coderazzi.filters.artifacts.RowFilter;
 
 
@@ -52,4 +54,21 @@ public class NotFilter extends AndFilter {
     @Override public boolean include(RowFilter.Entry rowEntry) {
         return !isEnabled() || !super.include(rowEntry);
     }
+
+    /** @see  RowFilter#includeRows(RowFilter.BatchEntry, int[], int, BitSet) */
+    @Override protected void includeRows(RowFilter.BatchEntry entry,
+                                         int rows[], int count,
+                                         BitSet result) {
+        BitSet included = new BitSet();
+        if (isEnabled()) {
+            super.includeRows(entry, rows, count, included);
+        }
+
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            if (!included.get(row)) {
+                result.set(row);
+            }
+        }
+    }
 }
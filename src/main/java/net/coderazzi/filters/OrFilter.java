@@ -25,6 +25,8 @@
 
 package net.coderazzi.filters;
 
+import java.util.BitSet;
+
 import net.coderazzi.filters.artifacts.RowFilter;
 
 
@@ -63,4 +65,41 @@ public class OrFilter extends ComposedFilter {
 
         return ret;
     }
+
+    /**
+     * Batch evaluation; each filter is only evaluated on the rows rejected by
+     * the previous ones.
+     *
+     * @see  RowFilter#includeRows(RowFilter.BatchEntry, int[], int, BitSet)
+     */
+    @Override protected void includeRows(RowFilter.BatchEntry entry,
+                                         int rows[], int count,
+                                         BitSet result) {
+        int pending[] = null;
+        BitSet included = null;
+        for (IFilter filter : filters) {
+            if (filter.isEnabled()) {
+                if (included == null) {
+                    pending = new int[count];
+                    System.arraycopy(rows, 0, pending, 0, count);
+                    included = new BitSet();
+                } else {
+                    included.clear();
+                }
+
+                include(filter, entry, pending, count, included);
+                result.or(included);
+                count = retain(pending, count, included, false);
+                if (count == 0) {
+                    return;
+                }
+            }
+        }
+
+        if (pending == null) {
+            for (int i = 0; i < count; i++) {
+                result.set(rows[i]);
+            }
+        }
+    }
 }
@@ -0,0 +1,203 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+import java.util.BitSet;
+
+
+/**
+ * <p>{@link RowFilter} whose outcome depends exclusively on the value of a
+ * single column.</p>
+ *
+ * <p>If the filtered model is a {@link IDictionaryModel}, and the column is
+ * dictionary encoded, the filter is evaluated only once per dictionary entry;
+ * rows are then matched by their dictionary code.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public abstract class ColumnFilter extends RowFilter {
+
+    private static final byte UNKNOWN = 0;
+    private static final byte INCLUDED = 1;
+    private static final byte EXCLUDED = 2;
+
+    /** The column in the model whose value is filtered. */
+    protected int column;
+
+    /**
+     * Outcome of the filter for each dictionary code; it is replaced when it
+     * must grow, so it can be read without locking.
+     */
+    private volatile DictionaryMatches dictionaryMatches;
+
+    /** Single constructor. */
+    protected ColumnFilter(int column) {
+        this.column = column;
+    }
+
+    /** Returns the filtered column, in model coordinates. */
+    public int getColumn() {
+        return column;
+    }
+
+    /** Specifies whether the given column value should be shown or hidden. */
+    public abstract boolean includeValue(Object value);
+
+    /** @see  RowFilter#include(RowFilter.Entry) */
+    @Override public boolean include(RowFilter.Entry entry) {
+        IDictionaryModel dictionary = getDictionaryModel(entry);
+        if ((dictionary == null)
+                || !((entry instanceof RowFilter.BatchEntry)
+                    || (entry.getIdentifier() instanceof Integer))) {
+            // entries not identifying the row are matched by the value
+            return includeValue(entry.getValue(column));
+        }
+
+        return includeCode(dictionary,
+                dictionary.getDictionaryCode(entry.getRow(), column));
+    }
+
+    /**
+     * Batch evaluation; on dictionary encoded columns, rows are matched
+     * directly by their codes.
+     *
+     * @see  RowFilter#includeRange(RowFilter.BatchEntry, int, int, BitSet)
+     */
+    @Override protected void includeRange(RowFilter.BatchEntry entry,
+                                          int from, int to,
+                                          BitSet result) {
+        IDictionaryModel dictionary = getDictionaryModel(entry);
+        if (dictionary == null) {
+            for (int row = from; row < to; row++) {
+                entry.setRow(row);
+                if (includeValue(entry.getValue(column))) {
+                    result.set(row);
+                }
+            }
+        } else {
+            for (int row = from; row < to; row++) {
+                if (includeCode(dictionary,
+                            dictionary.getDictionaryCode(row, column))) {
+                    result.set(row);
+                }
+            }
+        }
+    }
+
+    /** @see  RowFilter#includeRows(RowFilter.BatchEntry, int[], int, BitSet) */
+    @Override protected void includeRows(RowFilter.BatchEntry entry,
+                                         int rows[], int count,
+                                         BitSet result) {
+        IDictionaryModel dictionary = getDictionaryModel(entry);
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            boolean include;
+            if (dictionary == null) {
+                entry.setRow(row);
+                include = includeValue(entry.getValue(column));
+            } else {
+                include = includeCode(dictionary,
+                        dictionary.getDictionaryCode(row, column));
+            }
+
+            if (include) {
+                result.set(row);
+            }
+        }
+    }
+
+    /**
+     * Returns the entry's model as a {@link IDictionaryModel}, if it encodes
+     * the filtered column, or null otherwise.
+     */
+    private IDictionaryModel getDictionaryModel(RowFilter.Entry entry) {
+        Object model = entry.getModel();
+        if (model instanceof IDictionaryModel) {
+            IDictionaryModel ret = (IDictionaryModel) model;
+            if (ret.isDictionaryColumn(column)) {
+                return ret;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the outcome of the filter for the given dictionary code; the
+     * associated value is only evaluated the first time the code is found.
+     */
+    protected boolean includeCode(IDictionaryModel model, int code) {
+        DictionaryMatches cache = dictionaryMatches;
+        if ((cache == null) || (cache.model != model)
+                || (code >= cache.matches.length)) {
+            cache = growMatches(model, code);
+        }
+
+        // concurrent evaluations of the same code store the same outcome
+        byte match = cache.matches[code];
+        if (match == UNKNOWN) {
+            match = includeValue(model.getDictionaryValue(column, code))
+                ? INCLUDED : EXCLUDED;
+            cache.matches[code] = match;
+        }
+
+        return match == INCLUDED;
+    }
+
+    /**
+     * Replaces the outcomes cache with one covering the given code of the
+     * given model, keeping the outcomes already known for the model.
+     */
+    private synchronized DictionaryMatches growMatches(IDictionaryModel model,
+                                                      int              code) {
+        DictionaryMatches cache = dictionaryMatches;
+        if ((cache != null) && (cache.model == model)
+                && (code < cache.matches.length)) {
+            return cache;
+        }
+
+        int size = Math.max(code + 1, model.getDictionarySize(column));
+        DictionaryMatches ret = new DictionaryMatches();
+        ret.model = model;
+        if ((cache == null) || (cache.model != model)) {
+            ret.matches = new byte[size];
+        } else {
+            ret.matches = new byte[Math.max(size, cache.matches.length * 2)];
+            System.arraycopy(cache.matches, 0, ret.matches, 0,
+                cache.matches.length);
+        }
+
+        dictionaryMatches = ret;
+
+        return ret;
+    }
+
+    /** Outcome of the filter for each code of a dictionary model. */
+    private static final class DictionaryMatches {
+        IDictionaryModel model;
+        byte matches[];
+    }
+}
@@ -0,0 +1,514 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.table.AbstractTableModel;
+
+
+/**
+ * <p>{@link javax.swing.table.TableModel} storing the string, boolean and
+ * enumeration columns as dictionary codes.</p>
+ *
+ * <p>Each distinct value on a dictionary encoded column is kept only once; the
+ * rows store just an int code. This reduces considerably the memory used on
+ * large tables with repeated values, and permits the filters to evaluate each
+ * dictionary entry once (see {@link ColumnFilter}).</p>
+ *
+ * <p>Dictionaries only grow: a value removed from all rows keeps its code, so
+ * the codes are stable during the life of the model.</p>
+ *
+ * <p>Integer, Long, Double and Date columns that are not dictionary encoded
+ * are stored as primitive arrays, accessible through the {@link
+ * IPrimitiveModel} interface. Dates are kept as epoch milliseconds, and
+ * returned as new {@link Date} instances.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public class DictionaryTableModel extends AbstractTableModel
+    implements IDictionaryModel, IPrimitiveModel {
+
+    private static final long serialVersionUID = -2620342457734227616L;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String names[];
+    private Class<?> classes[];
+    private Column columns[];
+    private int rows;
+    private int capacity;
+
+    /**
+     * Constructor; string, boolean and enumeration columns are automatically
+     * dictionary encoded.
+     */
+    public DictionaryTableModel(String names[], Class<?> classes[]) {
+        this(names, classes, null);
+    }
+
+    /**
+     * Full constructor, specifying explicitly which columns are dictionary
+     * encoded. If encoded is null, string, boolean and enumeration columns
+     * are encoded.
+     */
+    public DictionaryTableModel(String    names[],
+                                Class<?>  classes[],
+                                boolean   encoded[]) {
+        if (names.length != classes.length) {
+            throw new IllegalArgumentException(
+                "Names and classes must have the same length");
+        }
+
+        this.names = names.clone();
+        this.classes = classes.clone();
+        this.capacity = INITIAL_CAPACITY;
+        this.columns = new Column[names.length];
+        for (int i = 0; i < columns.length; i++) {
+            boolean encode = (encoded == null) ? isEncodable(classes[i])
+                                               : encoded[i];
+            columns[i] = encode ? new DictionaryColumn(capacity)
+                                : createColumn(classes[i], capacity);
+        }
+    }
+
+    /** Adds a row at the end of the model. */
+    public void addRow(Object... row) {
+        insertRow(rows, row);
+    }
+
+    /** Adds multiple rows at the end of the model, with a single event. */
+    public void addRows(List<Object[]> newRows) {
+        int size = newRows.size();
+        if (size > 0) {
+            int first = rows;
+            ensureCapacity(rows + size);
+            for (Object[] row : newRows) {
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c].insert(rows, rows, row[c]);
+                }
+
+                rows++;
+            }
+
+            fireTableRowsInserted(first, rows - 1);
+        }
+    }
+
+    /** Inserts a row at the given position. */
+    public void insertRow(int index, Object... row) {
+        if ((index < 0) || (index > rows)) {
+            throw new IndexOutOfBoundsException("Invalid row " + index);
+        }
+
+        ensureCapacity(rows + 1);
+        for (int c = 0; c < columns.length; c++) {
+            columns[c].insert(index, rows, row[c]);
+        }
+
+        rows++;
+        fireTableRowsInserted(index, index);
+    }
+
+    /** Removes the given row. */
+    public void removeRow(int row) {
+        removeRows(row, row);
+    }
+
+    /** Removes the rows in the given range, both limits inclusive. */
+    public void removeRows(int firstRow, int lastRow) {
+        if ((firstRow < 0) || (lastRow >= rows) || (firstRow > lastRow)) {
+            throw new IndexOutOfBoundsException("Invalid rows " + firstRow
+                    + "-" + lastRow);
+        }
+
+        for (Column column : columns) {
+            column.remove(firstRow, lastRow, rows);
+        }
+
+        rows -= lastRow - firstRow + 1;
+        fireTableRowsDeleted(firstRow, lastRow);
+    }
+
+    /** Removes all the rows; the dictionaries are kept. */
+    public void clear() {
+        if (rows > 0) {
+            removeRows(0, rows - 1);
+        }
+    }
+
+    /** {@link IDictionaryModel} interface. */
+    public boolean isDictionaryColumn(int column) {
+        return columns[column] instanceof DictionaryColumn;
+    }
+
+    /** {@link IDictionaryModel} interface. */
+    public int getDictionaryCode(int row, int column) {
+        Column c = columns[column];
+
+        return (c instanceof DictionaryColumn)
+            ? ((DictionaryColumn) c).codes[row] : -1;
+    }
+
+    /** {@link IDictionaryModel} interface. */
+    public int getDictionarySize(int column) {
+        Column c = columns[column];
+
+        return (c instanceof DictionaryColumn)
+            ? ((DictionaryColumn) c).dictionary.size() : 0;
+    }
+
+    /** {@link IDictionaryModel} interface. */
+    public Object getDictionaryValue(int column, int code) {
+        return ((DictionaryColumn) columns[column]).dictionary.get(code);
+    }
+
+    /** {@link IDictionaryModel} interface. */
+    public boolean isDictionaryValueInUse(int column, int code) {
+        return ((DictionaryColumn) columns[column]).usage[code] > 0;
+    }
+
+    /** {@link IPrimitiveModel} interface. */
+    public Class<?> getPrimitiveClass(int column) {
+        Column c = columns[column];
+
+        return (c instanceof PrimitiveColumn) ? ((PrimitiveColumn) c).type
+                                              : null;
+    }
+
+    /** {@link IPrimitiveModel} interface. */
+    public boolean isNull(int row, int column) {
+        Column c = columns[column];
+
+        return (c instanceof PrimitiveColumn) ? ((PrimitiveColumn) c).nulls[row]
+                                              : (c.get(row) == null);
+    }
+
+    /** {@link IPrimitiveModel} interface. */
+    public int getInt(int row, int column) {
+        return ((int[]) ((PrimitiveColumn) columns[column]).values)[row];
+    }
+
+    /** {@link IPrimitiveModel} interface. */
+    public long getLong(int row, int column) {
+        return ((long[]) ((PrimitiveColumn) columns[column]).values)[row];
+    }
+
+    /** {@link IPrimitiveModel} interface. */
+    public double getDouble(int row, int column) {
+        return ((double[]) ((PrimitiveColumn) columns[column]).values)[row];
+    }
+
+    /** {@link IPrimitiveModel} interface. */
+    public long getTime(int row, int column) {
+        return getLong(row, column);
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override public String getColumnName(int column) {
+        return names[column];
+    }
+
+    @Override public Class<?> getColumnClass(int column) {
+        return classes[column];
+    }
+
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        checkRow(rowIndex);
+
+        return columns[columnIndex].get(rowIndex);
+    }
+
+    @Override public void setValueAt(Object value,
+                                     int    rowIndex,
+                                     int    columnIndex) {
+        checkRow(rowIndex);
+        columns[columnIndex].set(rowIndex, value);
+        fireTableCellUpdated(rowIndex, columnIndex);
+    }
+
+    /** Verifies that the row is within the model's rows. */
+    private void checkRow(int row) {
+        if ((row < 0) || (row >= rows)) {
+            throw new IndexOutOfBoundsException("Invalid row " + row);
+        }
+    }
+
+    /** Returns true if the class is dictionary encoded by default. */
+    private static boolean isEncodable(Class<?> c) {
+        return (c == String.class) || (c == Boolean.class) || c.isEnum();
+    }
+
+    /** Creates the storage for a non dictionary encoded column. */
+    private static Column createColumn(Class<?> c, int capacity) {
+        if (c == Integer.class) {
+            return new PrimitiveColumn(int.class, capacity) {
+                @Override Object get(int row) {
+                    return nulls[row] ? null : ((int[]) values)[row];
+                }
+
+                @Override void setValue(int row, Object value) {
+                    ((int[]) values)[row] = ((Number) value).intValue();
+                }
+            };
+        }
+
+        if (c == Long.class) {
+            return new PrimitiveColumn(long.class, capacity) {
+                @Override Object get(int row) {
+                    return nulls[row] ? null : ((long[]) values)[row];
+                }
+
+                @Override void setValue(int row, Object value) {
+                    ((long[]) values)[row] = ((Number) value).longValue();
+                }
+            };
+        }
+
+        if (c == Double.class) {
+            return new PrimitiveColumn(double.class, capacity) {
+                @Override Object get(int row) {
+                    return nulls[row] ? null : ((double[]) values)[row];
+                }
+
+                @Override void setValue(int row, Object value) {
+                    ((double[]) values)[row] = ((Number) value).doubleValue();
+                }
+            };
+        }
+
+        if (c == Date.class) {
+            return new PrimitiveColumn(Date.class, capacity) {
+                @Override Object get(int row) {
+                    return nulls[row] ? null
+                                      : new Date(((long[]) values)[row]);
+                }
+
+                @Override void setValue(int row, Object value) {
+                    ((long[]) values)[row] = ((Date) value).getTime();
+                }
+            };
+        }
+
+        return new ObjectColumn(capacity);
+    }
+
+    /** Ensures that all the columns can store the given number of rows. */
+    private void ensureCapacity(int size) {
+        if (size > capacity) {
+            capacity = Math.max(size, capacity + (capacity >> 1));
+            for (Column column : columns) {
+                column.grow(capacity, rows);
+            }
+        }
+    }
+
+    /** Storage of a single column. */
+    private static abstract class Column {
+        /** Returns the value at the given row. */
+        abstract Object get(int row);
+
+        /** Sets the value at the given row. */
+        abstract void set(int row, Object value);
+
+        /** Inserts a value, moving up the rows after index. */
+        abstract void insert(int index, int size, Object value);
+
+        /** Removes the given rows, both limits inclusive. */
+        abstract void remove(int first, int last, int size);
+
+        /** Resizes the column storage. */
+        abstract void grow(int capacity, int size);
+    }
+
+    /** Column storing directly the values. */
+    private static class ObjectColumn extends Column {
+        Object values[];
+
+        ObjectColumn(int capacity) {
+            values = new Object[capacity];
+        }
+
+        @Override Object get(int row) {
+            return values[row];
+        }
+
+        @Override void set(int row, Object value) {
+            values[row] = value;
+        }
+
+        @Override void insert(int index, int size, Object value) {
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+        }
+
+        @Override void remove(int first, int last, int size) {
+            int removed = last - first + 1;
+            System.arraycopy(values, last + 1, values, first, size - last - 1);
+            while (removed-- > 0) {
+                values[--size] = null;
+            }
+        }
+
+        @Override void grow(int capacity, int size) {
+            Object copy[] = new Object[capacity];
+            System.arraycopy(values, 0, copy, 0, size);
+            values = copy;
+        }
+    }
+
+    /**
+     * Column storing the values on a primitive array, plus a flag per row to
+     * signal null values.
+     */
+    private static abstract class PrimitiveColumn extends Column {
+        Class<?> type;
+        Object values;
+        boolean nulls[];
+
+        PrimitiveColumn(Class<?> type, int capacity) {
+            this.type = type;
+            this.values = newArray(capacity);
+            this.nulls = new boolean[capacity];
+        }
+
+        /** Sets a non null value at the given row. */
+        abstract void setValue(int row, Object value);
+
+        @Override void set(int row, Object value) {
+            nulls[row] = (value == null);
+            if (value != null) {
+                setValue(row, value);
+            }
+        }
+
+        @Override void insert(int index, int size, Object value) {
+            System.arraycopy(values, index, values, index + 1, size - index);
+            System.arraycopy(nulls, index, nulls, index + 1, size - index);
+            set(index, value);
+        }
+
+        @Override void remove(int first, int last, int size) {
+            System.arraycopy(values, last + 1, values, first, size - last - 1);
+            System.arraycopy(nulls, last + 1, nulls, first, size - last - 1);
+        }
+
+        @Override void grow(int capacity, int size) {
+            Object copy = newArray(capacity);
+            boolean copyNulls[] = new boolean[capacity];
+            System.arraycopy(values, 0, copy, 0, size);
+            System.arraycopy(nulls, 0, copyNulls, 0, size);
+            values = copy;
+            nulls = copyNulls;
+        }
+
+        private Object newArray(int capacity) {
+            if (type == int.class) {
+                return new int[capacity];
+            }
+
+            if (type == double.class) {
+                return new double[capacity];
+            }
+
+            return new long[capacity];
+        }
+    }
+
+    /** Column storing the values as dictionary codes. */
+    private static class DictionaryColumn extends Column {
+        int codes[];
+        int usage[] = new int[INITIAL_CAPACITY];
+        List<Object> dictionary = new ArrayList<Object>();
+        Map<Object, Integer> dictionaryCodes = new HashMap<Object, Integer>();
+
+        DictionaryColumn(int capacity) {
+            codes = new int[capacity];
+        }
+
+        @Override Object get(int row) {
+            return dictionary.get(codes[row]);
+        }
+
+        @Override void set(int row, Object value) {
+            int code = getCode(value);
+            usage[codes[row]]--;
+            usage[code]++;
+            codes[row] = code;
+        }
+
+        @Override void insert(int index, int size, Object value) {
+            int code = getCode(value);
+            System.arraycopy(codes, index, codes, index + 1, size - index);
+            codes[index] = code;
+            usage[code]++;
+        }
+
+        @Override void remove(int first, int last, int size) {
+            for (int i = first; i <= last; i++) {
+                usage[codes[i]]--;
+            }
+
+            System.arraycopy(codes, last + 1, codes, first, size - last - 1);
+        }
+
+        @Override void grow(int capacity, int size) {
+            int copy[] = new int[capacity];
+            System.arraycopy(codes, 0, copy, 0, size);
+            codes = copy;
+        }
+
+        /** Returns the code for the given value, creating it if needed. */
+        private int getCode(Object value) {
+            Integer code = dictionaryCodes.get(value);
+            if (code != null) {
+                return code;
+            }
+
+            int ret = dictionary.size();
+            dictionary.add(value);
+            dictionaryCodes.put(value, ret);
+            if (ret == usage.length) {
+                int copy[] = new int[ret * 2];
+                System.arraycopy(usage, 0, copy, 0, ret);
+                usage = copy;
+            }
+
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+/**
+ * <p>Interface that can be implemented by the
+ * {@link javax.swing.table.TableModel} instances that store some of their
+ * columns as dictionary codes.</p>
+ *
+ * <p>A dictionary encoded column keeps each distinct value once, in a
+ * dictionary, and the rows refer to the value by its code. Filters can detect
+ * this interface to evaluate its condition once per dictionary entry, instead
+ * of once per row.</p>
+ *
+ * <p>Dictionary codes must be stable: once a code is assigned to a value, it
+ * cannot be assigned later to any other value on the same column.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public interface IDictionaryModel {
+
+    /** Returns true if the given column is dictionary encoded. */
+    boolean isDictionaryColumn(int column);
+
+    /**
+     * Returns the dictionary code of the value at the given cell, or -1 if the
+     * column is not dictionary encoded.
+     */
+    int getDictionaryCode(int row, int column);
+
+    /**
+     * Returns the number of codes in the dictionary of the given column, or 0
+     * if the column is not dictionary encoded.
+     */
+    int getDictionarySize(int column);
+
+    /** Returns the value associated to the given dictionary code. */
+    Object getDictionaryValue(int column, int code);
+
+    /**
+     * Returns true if any row holds currently the value associated to the
+     * given dictionary code.
+     */
+    boolean isDictionaryValueInUse(int column, int code);
+}
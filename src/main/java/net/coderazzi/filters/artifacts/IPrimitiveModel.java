@@ -0,0 +1,68 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+/**
+ * <p>Interface that can be implemented by the
+ * {@link javax.swing.table.TableModel} instances able to provide the
+ * content of some columns as primitive values.</p>
+ *
+ * <p>Filters comparing numbers or dates can detect this interface to access
+ * directly the primitive values, without boxing them or calling generic
+ * comparators.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public interface IPrimitiveModel {
+
+    /**
+     * Returns the primitive type for the given column: int.class, long.class,
+     * double.class, or Date.class -for dates stored as epoch milliseconds-, or
+     * null if the column is not stored as primitive values.<br>
+     * For a given primitive type, the column's {@link
+     * javax.swing.table.TableModel#getValueAt(int, int)} must return instances
+     * of the associated wrapper class (Integer, Long, Double, Date).
+     */
+    Class<?> getPrimitiveClass(int column);
+
+    /** Returns true if the value at the given cell is null. */
+    boolean isNull(int row, int column);
+
+    /** Returns the value at the given cell, on an int column. */
+    int getInt(int row, int column);
+
+    /** Returns the value at the given cell, on a long column. */
+    long getLong(int row, int column);
+
+    /** Returns the value at the given cell, on a double column. */
+    double getDouble(int row, int column);
+
+    /**
+     * Returns the value at the given cell, on a Date column, as milliseconds
+     * since the epoch.
+     */
+    long getTime(int row, int column);
+}
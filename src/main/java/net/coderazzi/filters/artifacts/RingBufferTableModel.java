@@ -0,0 +1,165 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+import java.util.List;
+
+import javax.swing.table.AbstractTableModel;
+
+
+/**
+ * <p>{@link javax.swing.table.TableModel} with a bounded capacity, for log or
+ * event tables: rows are only appended at the end and, once the capacity is
+ * reached, the oldest rows are removed from the front.</p>
+ *
+ * <p>The rows are kept in a circular buffer, so appending and removing rows
+ * takes constant time. It is designed to work with the {@link
+ * TableModelFilter.Mapping#STREAMING} mapping, where neither operation
+ * requires reapplying the filter.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public class RingBufferTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 5291406117438305418L;
+
+    private String names[];
+    private Class<?> classes[];
+    private Object buffer[][];
+
+    /** Position in the buffer of the first row. */
+    private int head;
+    private int rows;
+
+    /** Constructor, specifying the maximum number of rows in the model. */
+    public RingBufferTableModel(String   names[],
+                                Class<?> classes[],
+                                int      capacity) {
+        if (names.length != classes.length) {
+            throw new IllegalArgumentException(
+                "Names and classes must have the same length");
+        }
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+
+        this.names = names.clone();
+        this.classes = classes.clone();
+        this.buffer = new Object[capacity][];
+    }
+
+    /** Returns the maximum number of rows in the model. */
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Adds a row at the end of the model, removing first the oldest row if
+     * the capacity is reached.
+     */
+    public void addRow(Object... row) {
+        if (rows == buffer.length) {
+            removeFirstRows(1);
+        }
+
+        buffer[(head + rows) % buffer.length] = row.clone();
+        rows++;
+        fireTableRowsInserted(rows - 1, rows - 1);
+    }
+
+    /**
+     * Adds multiple rows at the end of the model, removing first the oldest
+     * rows needed to keep the capacity, with a single event for each
+     * operation. If there are more new rows than the capacity, only the last
+     * ones are added.
+     */
+    public void addRows(List<Object[]> newRows) {
+        int size = newRows.size();
+        int added = Math.min(size, buffer.length);
+        if (added > 0) {
+            int excess = (rows + added) - buffer.length;
+            if (excess > 0) {
+                removeFirstRows(excess);
+            }
+
+            int first = rows;
+            for (Object[] row : newRows.subList(size - added, size)) {
+                buffer[(head + rows) % buffer.length] = row.clone();
+                rows++;
+            }
+
+            fireTableRowsInserted(first, rows - 1);
+        }
+    }
+
+    /** Removes the given number of rows from the front of the model. */
+    public void removeFirstRows(int count) {
+        if ((count < 0) || (count > rows)) {
+            throw new IndexOutOfBoundsException("Invalid count " + count);
+        }
+
+        if (count > 0) {
+            for (int i = 0; i < count; i++) {
+                buffer[(head + i) % buffer.length] = null;
+            }
+
+            head = (head + count) % buffer.length;
+            rows -= count;
+            fireTableRowsDeleted(0, count - 1);
+        }
+    }
+
+    /** Removes all the rows. */
+    public void clear() {
+        removeFirstRows(rows);
+    }
+
+    @Override public String getColumnName(int column) {
+        return names[column];
+    }
+
+    @Override public Class<?> getColumnClass(int column) {
+        return classes[column];
+    }
+
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public Object getValueAt(int row, int column) {
+        if ((row < 0) || (row >= rows)) {
+            throw new IndexOutOfBoundsException("Invalid row " + row);
+        }
+
+        return buffer[(head + row) % buffer.length][column];
+    }
+
+}
@@ -25,6 +25,8 @@
 
 package net.coderazzi.filters.artifacts;
 
+import java.util.BitSet;
+
 
 /**
  * <p>Class defined for compatibility with Java 6</p>
@@ -33,6 +35,15 @@ package net.coderazzi.filters.artifacts;
  */
 abstract public class RowFilter {
 
+    /** Batch support flag: {@link #includeRange} is used. */
+    private static final int BATCH_RANGE = 1;
+
+    /** Batch support flag: {@link #includeRows} is used. */
+    private static final int BATCH_ROWS = 2;
+
+    /** The batch methods consistent with include(Entry), -1 if unknown. */
+    private int batchSupport = -1;
+
     /**
      * Specifies whether the specified entry should be shown or hidden.
      *
@@ -40,6 +51,133 @@ abstract public class RowFilter {
      */
     public abstract boolean include(RowFilter.Entry entry);
 
+    /**
+     * Evaluates the filter on the model rows between from (inclusive) and to
+     * (exclusive), setting on result the bit associated to each included row.
+     * <br>
+     * The batch implementations ({@link #includeRange} and {@link
+     * #includeRows}) are only used if declared in the class that declares
+     * {@link #include(RowFilter.Entry)}, or in a subclass; otherwise, the
+     * filter is evaluated row by row, so subclasses overriding only
+     * include(Entry) keep their behaviour.
+     */
+    public final void include(RowFilter.BatchEntry entry, int from, int to,
+                              BitSet result) {
+        int support = getBatchSupport();
+        if ((support & BATCH_RANGE) != 0) {
+            includeRange(entry, from, to, result);
+        } else if ((support & BATCH_ROWS) != 0) {
+            int rows[] = new int[Math.max(0, to - from)];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = from + i;
+            }
+
+            includeRows(entry, rows, rows.length, result);
+        } else {
+            for (int row = from; row < to; row++) {
+                entry.setRow(row);
+                if (include(entry)) {
+                    result.set(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates the filter on the first count model rows in the given array,
+     * setting on result the bit associated to each included row (the bit
+     * index is the model row, not its position in the array).<br>
+     * As {@link #include(RowFilter.BatchEntry, int, int, BitSet)}, the batch
+     * implementation is only used if consistent with include(Entry).
+     */
+    public final void include(RowFilter.BatchEntry entry, int rows[],
+                              int count, BitSet result) {
+        if ((getBatchSupport() & BATCH_ROWS) != 0) {
+            includeRows(entry, rows, count, result);
+        } else {
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                entry.setRow(row);
+                if (include(entry)) {
+                    result.set(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Batch evaluation on a range of rows, to be overridden together with
+     * {@link #include(RowFilter.Entry)}; it must produce the same outcome.
+     */
+    protected void includeRange(RowFilter.BatchEntry entry, int from, int to,
+                                BitSet result) {
+        for (int row = from; row < to; row++) {
+            entry.setRow(row);
+            if (include(entry)) {
+                result.set(row);
+            }
+        }
+    }
+
+    /**
+     * Batch evaluation on an array of rows, to be overridden together with
+     * {@link #include(RowFilter.Entry)}; it must produce the same outcome.
+     */
+    protected void includeRows(RowFilter.BatchEntry entry, int rows[],
+                               int count, BitSet result) {
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            entry.setRow(row);
+            if (include(entry)) {
+                result.set(row);
+            }
+        }
+    }
+
+    /** Returns the batch methods that can be used on this instance. */
+    private int getBatchSupport() {
+        if (batchSupport == -1) {
+            Class<?> base = getDeclaringClass("include", RowFilter.Entry.class);
+            Class<?> range = getDeclaringClass("includeRange",
+                    RowFilter.BatchEntry.class, int.class, int.class,
+                    BitSet.class);
+            Class<?> rows = getDeclaringClass("includeRows",
+                    RowFilter.BatchEntry.class, int[].class, int.class,
+                    BitSet.class);
+            int support = 0;
+            if ((range != RowFilter.class) && base.isAssignableFrom(range)) {
+                support |= BATCH_RANGE;
+            }
+
+            if ((rows != RowFilter.class) && base.isAssignableFrom(rows)) {
+                support |= BATCH_ROWS;
+            }
+
+            batchSupport = support;
+        }
+
+        return batchSupport;
+    }
+
+    /** Returns the most derived class declaring the given method. */
+    private Class<?> getDeclaringClass(String name, Class<?>... parameters) {
+        for (Class<?> c = getClass(); c != RowFilter.class;
+                c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameters);
+
+                return c;
+            } catch (NoSuchMethodException nsme) {
+                // try on the superclass
+            } catch (SecurityException se) {
+                // cannot be verified: it is assumed declared here
+                return c;
+            }
+        }
+
+        return RowFilter.class;
+    }
+
     /**
      * .
      *
@@ -57,6 +195,11 @@ abstract public class RowFilter {
         /** Returns the row number. */
         public abstract Object getIdentifier();
 
+        /** Returns the row number, as a primitive value. */
+        public int getRow() {
+            return (Integer) getIdentifier();
+        }
+
         /** Returns the value at the specified index. */
         public abstract Object getValue(int index);
 
@@ -67,4 +210,12 @@ abstract public class RowFilter {
         public abstract int getValueCount();
 
     }
+
+    /** {@link Entry} that can be moved over the rows, for batch evaluations. */
+    public static abstract class BatchEntry extends Entry {
+
+        /** Moves the entry to the given row. */
+        public abstract void setRow(int row);
+
+    }
 }
@@ -0,0 +1,770 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+import java.util.BitSet;
+
+
+/**
+ * <p>Compressed set of rows, used to keep filter results.</p>
+ *
+ * <p>The rows are split in chunks of 65536 rows, each one stored in the most
+ * compact container: a sorted array for sparse chunks, a bitmap for dense
+ * chunks, or a list of runs for chunks with long sequences of consecutive
+ * rows. A chunk without rows takes no memory at all, so a set uses at most
+ * one bit per row, and usually much less.</p>
+ *
+ * <p>The number of rows before each chunk is kept, providing fast rank and
+ * select operations, that is, conversions between a row and its position in
+ * the set.</p>
+ *
+ * <p>The set is built by appending rows in ascending order.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public class RowSet {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_MASK = 0xffff;
+    /** Size of an array container over which a bitmap takes less memory. */
+    private static final int ARRAY_LIMIT = 4096;
+
+    /** The chunk (high bits of the rows) of each container. */
+    private int keys[] = new int[4];
+    private Container containers[] = new Container[4];
+    /** The number of rows in the previous containers. */
+    private int before[] = new int[4];
+    private int chunks;
+    private int size;
+    private int last = -1;
+
+    /** Returns the number of rows in the set. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns true if the set contains no rows. */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Returns the last row in the set, -1 if empty. */
+    public int getLastRow() {
+        return last;
+    }
+
+    /** Removes all the rows. */
+    public void clear() {
+        keys = new int[4];
+        containers = new Container[4];
+        before = new int[4];
+        chunks = size = 0;
+        last = -1;
+    }
+
+    /** Adds a row, which must be greater than any row already added. */
+    public void add(int row) {
+        prepareChunk(row);
+        int c = chunks - 1;
+        containers[c] = containers[c].add(row & CHUNK_MASK);
+        last = row;
+        size++;
+    }
+
+    /**
+     * Adds all the rows between from (inclusive) and to (exclusive); from
+     * must be greater than any row already added.
+     */
+    public void add(int from, int to) {
+        while (from < to) {
+            prepareChunk(from);
+            int end = Math.min(to, (from | CHUNK_MASK) + 1);
+            int c = chunks - 1;
+            containers[c] = containers[c].add(from & CHUNK_MASK,
+                    ((end - 1) & CHUNK_MASK) + 1);
+            size += end - from;
+            last = end - 1;
+            from = end;
+        }
+    }
+
+    /**
+     * Adds the rows set on the given bits between from (inclusive) and to
+     * (exclusive); from must be greater than any row already added.
+     */
+    public void add(BitSet bits, int from, int to) {
+        int row = bits.nextSetBit(from);
+        while ((row >= 0) && (row < to)) {
+            int end = Math.min(to, bits.nextClearBit(row));
+            if (end - row == 1) {
+                add(row);
+            } else {
+                add(row, end);
+            }
+
+            row = bits.nextSetBit(end);
+        }
+    }
+
+    /**
+     * Converts, if it takes less memory, the last container into a list of
+     * runs; the other containers are already converted when the next one is
+     * created. To be called once the set is completely built.
+     */
+    public void optimize() {
+        if (chunks > 0) {
+            containers[chunks - 1] = containers[chunks - 1].optimize();
+        }
+    }
+
+    /** Returns true if the set contains the given row. */
+    public boolean contains(int row) {
+        int c = find(row >>> CHUNK_BITS);
+
+        return (c >= 0) && containers[c].contains(row & CHUNK_MASK);
+    }
+
+    /** Returns the number of rows in the set lower than the given row. */
+    public int rank(int row) {
+        int c = find(row >>> CHUNK_BITS);
+        if (c >= 0) {
+            return before[c] + containers[c].rank(row & CHUNK_MASK);
+        }
+
+        c = -c - 1;
+
+        return (c < chunks) ? before[c] : size;
+    }
+
+    /** Returns the position of the row in the set, -1 if not included. */
+    public int indexOf(int row) {
+        int c = find(row >>> CHUNK_BITS);
+        if (c >= 0) {
+            int low = row & CHUNK_MASK;
+            Container container = containers[c];
+            if (container.contains(low)) {
+                return before[c] + container.rank(low);
+            }
+        }
+
+        return -1;
+    }
+
+    /** Returns the row at the given position. */
+    public int select(int index) {
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+
+        int low = 0;
+        int high = chunks - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (before[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return (keys[low] << CHUNK_BITS)
+                | containers[low].select(index - before[low]);
+    }
+
+    /** Returns the first row in the set equal or greater than the given one. */
+    public int nextRow(int from) {
+        int c = find(from >>> CHUNK_BITS);
+        if (c >= 0) {
+            int next = containers[c].next(from & CHUNK_MASK);
+            if (next >= 0) {
+                return (keys[c] << CHUNK_BITS) | next;
+            }
+
+            c++;
+        } else {
+            c = -c - 1;
+        }
+
+        return (c < chunks)
+            ? ((keys[c] << CHUNK_BITS) | containers[c].next(0)) : -1;
+    }
+
+    /**
+     * Sets on the given bits the rows in the set between from (inclusive)
+     * and to (exclusive).
+     */
+    public void copyTo(BitSet bits, int from, int to) {
+        int c = find(from >>> CHUNK_BITS);
+        if (c < 0) {
+            c = -c - 1;
+        }
+
+        for (; c < chunks; c++) {
+            int base = keys[c] << CHUNK_BITS;
+            if (base >= to) {
+                break;
+            }
+
+            containers[c].copyTo(bits, base, Math.max(0, from - base),
+                Math.min(CHUNK_MASK + 1, to - base));
+        }
+    }
+
+    /**
+     * Returns a copy of the set. As only the last container is modified when
+     * rows are added, the copy shares the previous ones.
+     */
+    public RowSet copy() {
+        RowSet ret = new RowSet();
+        ret.keys = keys.clone();
+        ret.before = before.clone();
+        ret.containers = containers.clone();
+        ret.chunks = chunks;
+        ret.size = size;
+        ret.last = last;
+        if (chunks > 0) {
+            ret.containers[chunks - 1] = containers[chunks - 1].copy(
+                    new ArrayContainer());
+        }
+
+        return ret;
+    }
+
+    /** Returns an estimation of the memory used by the set, in bytes. */
+    public long getMemoryUsage() {
+        long ret = 12L * keys.length;
+        for (int i = 0; i < chunks; i++) {
+            ret += containers[i].getMemoryUsage();
+        }
+
+        return ret;
+    }
+
+    /** Creates, if needed, the container for the given row. */
+    private void prepareChunk(int row) {
+        if (row <= last) {
+            throw new IllegalArgumentException("Rows must be ascending");
+        }
+
+        int key = row >>> CHUNK_BITS;
+        if ((chunks == 0) || (keys[chunks - 1] != key)) {
+            if (chunks > 0) {
+                containers[chunks - 1] = containers[chunks - 1].optimize();
+            }
+
+            if (chunks == keys.length) {
+                int length = chunks * 2;
+                int newKeys[] = new int[length];
+                int newBefore[] = new int[length];
+                Container newContainers[] = new Container[length];
+                System.arraycopy(keys, 0, newKeys, 0, chunks);
+                System.arraycopy(before, 0, newBefore, 0, chunks);
+                System.arraycopy(containers, 0, newContainers, 0, chunks);
+                keys = newKeys;
+                before = newBefore;
+                containers = newContainers;
+            }
+
+            keys[chunks] = key;
+            before[chunks] = size;
+            containers[chunks++] = new ArrayContainer();
+        }
+    }
+
+    /** Binary search of a chunk, with the {@link java.util.Arrays} result. */
+    private int find(int key) {
+        int low = 0;
+        int high = chunks - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = keys[mid];
+            if (value < key) {
+                low = mid + 1;
+            } else if (value > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    /**
+     * Set of values between 0 and 65535, appended in ascending order. The
+     * add operations return the container to use from then on.
+     */
+    abstract static class Container {
+        int cardinality;
+
+        abstract Container add(int value);
+
+        /** Adds the values between from (inclusive) and to (exclusive). */
+        abstract Container add(int from, int to);
+
+        abstract boolean contains(int value);
+
+        /** Returns the number of values lower than the given one. */
+        abstract int rank(int value);
+
+        abstract int select(int index);
+
+        /** Returns the first value equal or greater, -1 if none. */
+        abstract int next(int value);
+
+        /** Returns the number of sequences of consecutive values. */
+        abstract int getRuns();
+
+        abstract int getMemoryUsage();
+
+        /**
+         * Sets on the bits the values between from (inclusive) and to
+         * (exclusive), adding them the given base.
+         */
+        abstract void copyTo(BitSet bits, int base, int from, int to);
+
+        /** Returns the container using less memory for the same values. */
+        Container optimize() {
+            int runs = getRuns();
+            int runMemory = RunContainer.getMemoryUsage(runs);
+            int arrayMemory = (cardinality > ARRAY_LIMIT)
+                ? Integer.MAX_VALUE
+                : ArrayContainer.getMemoryUsage(cardinality);
+            int bitmapMemory = BitmapContainer.MEMORY;
+            if (runMemory <= Math.min(arrayMemory, bitmapMemory)) {
+                return (this instanceof RunContainer)
+                    ? this : copy(new RunContainer(runs));
+            }
+
+            if (arrayMemory <= bitmapMemory) {
+                return ((this instanceof ArrayContainer)
+                        && (getMemoryUsage() == arrayMemory))
+                    ? this : copy(new ArrayContainer(cardinality));
+            }
+
+            return (this instanceof BitmapContainer)
+                ? this : copy(new BitmapContainer());
+        }
+
+        /** Copies the values of this container into the given one. */
+        Container copy(Container target) {
+            int value = next(0);
+            while (value >= 0) {
+                int end = value + 1;
+                while ((end <= CHUNK_MASK) && contains(end)) {
+                    end++;
+                }
+
+                target = target.add(value, end);
+                value = (end > CHUNK_MASK) ? -1 : next(end);
+            }
+
+            return target;
+        }
+    }
+
+    /** Container keeping the values in a sorted array. */
+    static final class ArrayContainer extends Container {
+        char values[];
+
+        ArrayContainer() {
+            this(8);
+        }
+
+        ArrayContainer(int capacity) {
+            values = new char[Math.max(1, capacity)];
+        }
+
+        static int getMemoryUsage(int cardinality) {
+            return 2 * cardinality;
+        }
+
+        @Override Container add(int value) {
+            if (cardinality == ARRAY_LIMIT) {
+                return copy(new BitmapContainer()).add(value);
+            }
+
+            if (cardinality == values.length) {
+                char newValues[] = new char[Math.min(ARRAY_LIMIT,
+                            cardinality * 2 + 1)];
+                System.arraycopy(values, 0, newValues, 0, cardinality);
+                values = newValues;
+            }
+
+            values[cardinality++] = (char) value;
+
+            return this;
+        }
+
+        @Override Container add(int from, int to) {
+            if (cardinality + to - from > ARRAY_LIMIT) {
+                Container ret = copy((to - from > ARRAY_LIMIT)
+                        ? new RunContainer(1) : new BitmapContainer());
+
+                return ret.add(from, to);
+            }
+
+            Container ret = this;
+            while (from < to) {
+                ret = ret.add(from++);
+            }
+
+            return ret;
+        }
+
+        @Override Container copy(Container target) {
+            for (int i = 0; i < cardinality; i++) {
+                target = target.add(values[i]);
+            }
+
+            return target;
+        }
+
+        @Override boolean contains(int value) {
+            int pos = rank(value);
+
+            return (pos < cardinality) && (values[pos] == value);
+        }
+
+        @Override int rank(int value) {
+            int low = 0;
+            int high = cardinality;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return low;
+        }
+
+        @Override int select(int index) {
+            return values[index];
+        }
+
+        @Override int next(int value) {
+            int pos = rank(value);
+
+            return (pos < cardinality) ? values[pos] : -1;
+        }
+
+        @Override int getRuns() {
+            int ret = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if ((i == 0) || (values[i] != values[i - 1] + 1)) {
+                    ret++;
+                }
+            }
+
+            return ret;
+        }
+
+        @Override int getMemoryUsage() {
+            return 2 * values.length;
+        }
+
+        @Override void copyTo(BitSet bits, int base, int from, int to) {
+            for (int i = rank(from); (i < cardinality) && (values[i] < to);
+                    i++) {
+                bits.set(base + values[i]);
+            }
+        }
+    }
+
+    /**
+     * Container keeping the values in a bitmap, with the number of values
+     * before each group of 16 words, to speed up rank and select.
+     */
+    static final class BitmapContainer extends Container {
+        static final int MEMORY = 8192;
+        private static final int GROUP_BITS = 10;
+        long words[] = new long[1024];
+        int counts[];
+
+        @Override Container add(int value) {
+            words[value >>> 6] |= 1L << value;
+            cardinality++;
+            counts = null;
+
+            return this;
+        }
+
+        @Override Container add(int from, int to) {
+            int first = from >>> 6;
+            int lastWord = (to - 1) >>> 6;
+            long firstMask = -1L << from;
+            long lastMask = -1L >>> -to;
+            if (first == lastWord) {
+                words[first] |= firstMask & lastMask;
+            } else {
+                words[first] |= firstMask;
+                for (int w = first + 1; w < lastWord; w++) {
+                    words[w] = -1L;
+                }
+
+                words[lastWord] |= lastMask;
+            }
+
+            cardinality += to - from;
+            counts = null;
+
+            return this;
+        }
+
+        @Override boolean contains(int value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override int rank(int value) {
+            prepareCounts();
+
+            int ret = counts[value >>> GROUP_BITS];
+            int word = value >>> 6;
+            for (int w = (value >>> GROUP_BITS) << 4; w < word; w++) {
+                ret += Long.bitCount(words[w]);
+            }
+
+            return ret + Long.bitCount(words[word] & ((1L << value) - 1));
+        }
+
+        @Override int select(int index) {
+            prepareCounts();
+
+            int group = 0;
+            while ((group < 63) && (counts[group + 1] <= index)) {
+                group++;
+            }
+
+            index -= counts[group];
+
+            int w = group << 4;
+            int bits = Long.bitCount(words[w]);
+            while (index >= bits) {
+                index -= bits;
+                bits = Long.bitCount(words[++w]);
+            }
+
+            long word = words[w];
+            while (index-- > 0) {
+                word &= word - 1;
+            }
+
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        @Override int next(int value) {
+            int w = value >>> 6;
+            long word = words[w] & (-1L << value);
+            while (word == 0) {
+                if (++w == words.length) {
+                    return -1;
+                }
+
+                word = words[w];
+            }
+
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        @Override int getRuns() {
+            int ret = 0;
+            long previous = 0;
+            for (long word : words) {
+                ret += Long.bitCount(word & ~((word << 1) | (previous >>> 63)));
+                previous = word;
+            }
+
+            return ret;
+        }
+
+        @Override int getMemoryUsage() {
+            return 8 * words.length + ((counts == null) ? 0 : 256);
+        }
+
+        @Override void copyTo(BitSet bits, int base, int from, int to) {
+            for (int value = next(from); (value >= 0) && (value < to);
+                    value = (value == CHUNK_MASK) ? -1 : next(value + 1)) {
+                bits.set(base + value);
+            }
+        }
+
+        private void prepareCounts() {
+            if (counts == null) {
+                counts = new int[64];
+
+                int count = 0;
+                for (int w = 0; w < words.length; w++) {
+                    if ((w & 15) == 0) {
+                        counts[w >>> 4] = count;
+                    }
+
+                    count += Long.bitCount(words[w]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Container keeping the sequences of consecutive values, with the number
+     * of values before each sequence.
+     */
+    static final class RunContainer extends Container {
+        char starts[];
+        char ends[];
+        int before[];
+        int runs;
+
+        RunContainer(int capacity) {
+            capacity = Math.max(1, capacity);
+            starts = new char[capacity];
+            ends = new char[capacity];
+            before = new int[capacity];
+        }
+
+        static int getMemoryUsage(int runs) {
+            return 8 * runs;
+        }
+
+        @Override Container add(int value) {
+            return add(value, value + 1);
+        }
+
+        @Override Container add(int from, int to) {
+            if ((runs > 0) && (ends[runs - 1] + 1 == from)) {
+                ends[runs - 1] = (char) (to - 1);
+            } else if (getMemoryUsage(runs) >= BitmapContainer.MEMORY) {
+                return copy(new BitmapContainer()).add(from, to);
+            } else {
+                if (runs == starts.length) {
+                    int length = runs * 2;
+                    char newStarts[] = new char[length];
+                    char newEnds[] = new char[length];
+                    int newBefore[] = new int[length];
+                    System.arraycopy(starts, 0, newStarts, 0, runs);
+                    System.arraycopy(ends, 0, newEnds, 0, runs);
+                    System.arraycopy(before, 0, newBefore, 0, runs);
+                    starts = newStarts;
+                    ends = newEnds;
+                    before = newBefore;
+                }
+
+                starts[runs] = (char) from;
+                ends[runs] = (char) (to - 1);
+                before[runs++] = cardinality;
+            }
+
+            cardinality += to - from;
+
+            return this;
+        }
+
+        @Override boolean contains(int value) {
+            int run = findRun(value);
+
+            return (run >= 0) && (value <= ends[run]);
+        }
+
+        @Override int rank(int value) {
+            int run = findRun(value);
+            if (run < 0) {
+                return 0;
+            }
+
+            return before[run] + Math.min(value - starts[run],
+                    ends[run] - starts[run] + 1);
+        }
+
+        @Override int select(int index) {
+            int low = 0;
+            int high = runs - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (before[mid] <= index) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            return starts[low] + index - before[low];
+        }
+
+        @Override int next(int value) {
+            int run = findRun(value);
+            if ((run >= 0) && (value <= ends[run])) {
+                return value;
+            }
+
+            return (++run < runs) ? starts[run] : -1;
+        }
+
+        @Override int getRuns() {
+            return runs;
+        }
+
+        @Override int getMemoryUsage() {
+            return 8 * starts.length;
+        }
+
+        @Override void copyTo(BitSet bits, int base, int from, int to) {
+            for (int run = Math.max(0, findRun(from));
+                    (run < runs) && (starts[run] < to); run++) {
+                int start = Math.max(from, starts[run]);
+                int end = Math.min(to, ends[run] + 1);
+                if (start < end) {
+                    bits.set(base + start, base + end);
+                }
+            }
+        }
+
+        @Override Container copy(Container target) {
+            for (int i = 0; i < runs; i++) {
+                target = target.add(starts[i], ends[i] + 1);
+            }
+
+            return target;
+        }
+
+        /** Returns the last run starting at or before value, -1 if none. */
+        private int findRun(int value) {
+            int low = 0;
+            int high = runs - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            return low - 1;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.TableModel;
+
+
+/**
+ * <p>Class to accumulate the {@link TableModelEvent}s received during a bulk
+ * update of a table model, summarizing them into a minimal set of
+ * events.</p>
+ *
+ * <p>Rows removed from the front of the model are accumulated into a single
+ * deletion, rows inserted at the end into a single insertion, and updates on
+ * the previously existing rows into a single update covering all of them.
+ * Any other event (deletions or insertions in the middle of the model,
+ * unbounded updates) is summarized as a full data change, and structure
+ * changes as a full structure change.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public class TableModelEventsCollector {
+
+    /** The model whose events are collected. */
+    private TableModel model;
+
+    /** The number of rows in the model when the collection started. */
+    private int initialRows;
+
+    /** The number of rows in the model after the last collected event. */
+    private int rows;
+
+    /** The number of rows removed from the front of the model. */
+    private int removed;
+
+    /** Set if any event requires a full structure change. */
+    private boolean structureChanged;
+
+    /** Set if any event requires a full data change. */
+    private boolean dataChanged;
+
+    /**
+     * The first updated row, or -1 if there are no updates; updated rows are
+     * kept as positions in the model before any row was removed.
+     */
+    private int firstUpdated = -1;
+
+    /** The last updated row. */
+    private int lastUpdated;
+
+    /** The updated column, TableModelEvent.ALL_COLUMNS if several. */
+    private int updatedColumn;
+
+    /** Constructor, starting the collection of events on the given model. */
+    public TableModelEventsCollector(TableModel model) {
+        this.model = model;
+        this.initialRows = this.rows = model.getRowCount();
+    }
+
+    /** Returns the model whose events are collected. */
+    public TableModel getModel() {
+        return model;
+    }
+
+    /** Returns true if no event has been collected. */
+    public boolean isEmpty() {
+        return !structureChanged && !dataChanged && (firstUpdated == -1)
+            && (rows == initialRows) && (removed == 0);
+    }
+
+    /** Collects a new event, that must be originated on the model. */
+    public void collect(TableModelEvent e) {
+        if (structureChanged) {
+            return;
+        }
+
+        int first = e.getFirstRow();
+        if (first == TableModelEvent.HEADER_ROW) {
+            structureChanged = true;
+
+            return;
+        }
+
+        if (dataChanged) {
+            return;
+        }
+
+        int last = e.getLastRow();
+        switch (e.getType()) {
+
+        case TableModelEvent.INSERT:
+
+            if ((first == rows) && (last >= first)
+                    && (last == (model.getRowCount() - 1))) {
+                rows = last + 1;
+            } else {
+                dataChanged = true;
+            }
+
+            break;
+
+        case TableModelEvent.DELETE:
+
+            if ((first == 0) && (last >= first) && (last < rows)
+                    && ((rows - last - 1) == model.getRowCount())) {
+                removed += last + 1;
+                rows -= last + 1;
+            } else {
+                dataChanged = true;
+            }
+
+            break;
+
+        case TableModelEvent.UPDATE:
+
+            if ((first < 0) || (last == Integer.MAX_VALUE)) {
+                dataChanged = true;
+            } else if ((first + removed) < initialRows) {
+                first += removed;
+                // updates on the inserted rows are covered by the insertion
+                last = Math.min(last + removed, initialRows - 1);
+                if (firstUpdated == -1) {
+                    firstUpdated = first;
+                    lastUpdated = last;
+                    updatedColumn = e.getColumn();
+                } else {
+                    firstUpdated = Math.min(firstUpdated, first);
+                    lastUpdated = Math.max(lastUpdated, last);
+                    if (updatedColumn != e.getColumn()) {
+                        updatedColumn = TableModelEvent.ALL_COLUMNS;
+                    }
+                }
+            }
+
+            break;
+
+        default:
+
+            dataChanged = true;
+        }
+    }
+
+    /**
+     * Returns the summarized events, in the order they must be processed:
+     * a single structure or data change event, or otherwise a deletion event
+     * on the front rows, an insertion event at the end, and an update event
+     * on the remaining previously existing rows.<br>
+     * As the events are produced once the model holds all the changes, the
+     * model holds already, on the deletion event, the inserted rows.
+     */
+    public List<TableModelEvent> getEvents() {
+        List<TableModelEvent> ret = new ArrayList<TableModelEvent>(3);
+        if (structureChanged) {
+            ret.add(new TableModelEvent(model, TableModelEvent.HEADER_ROW));
+        } else if (dataChanged) {
+            ret.add(new TableModelEvent(model));
+        } else {
+            // the removed rows can include some of the inserted ones
+            int deleted = Math.min(removed, initialRows);
+            if (deleted > 0) {
+                ret.add(new TableModelEvent(model, 0, deleted - 1,
+                        TableModelEvent.ALL_COLUMNS, TableModelEvent.DELETE));
+            }
+
+            int kept = initialRows - deleted;
+            if (rows > kept) {
+                ret.add(new TableModelEvent(model, kept, rows - 1,
+                        TableModelEvent.ALL_COLUMNS, TableModelEvent.INSERT));
+            }
+
+            int first = Math.max(firstUpdated, removed);
+            if ((firstUpdated != -1) && (lastUpdated >= first)) {
+                ret.add(new TableModelEvent(model, first - removed,
+                        lastUpdated - removed, updatedColumn,
+                        TableModelEvent.UPDATE));
+            }
+        }
+
+        return ret;
+    }
+
+}
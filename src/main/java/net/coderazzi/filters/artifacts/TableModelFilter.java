@@ -25,7 +25,10 @@
 
 package net.coderazzi.filters.artifacts;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
@@ -39,6 +42,21 @@ import javax.swing.table.TableModel;
  * <p>It tries to mimic the behaviour in the Java 6 model. In special, updates
  * to the model do not imply reapplying the filter in the modified rows.</p>
  *
+ * <p>Rows appended at the end of the model are filtered on arrival, without
+ * reapplying the filter on the whole model. Model events received between
+ * {@link #beginUpdate()} and {@link #endUpdate()} are handled only once.</p>
+ *
+ * <p>The {@link Mapping#STREAMING} mapping targets models that only append
+ * rows at the end and remove them from the front, like {@link
+ * RingBufferTableModel}: removals from the front are then handled without
+ * reapplying the filter.</p>
+ *
+ * <p>The mapping between view and model rows is kept, by default, in plain
+ * arrays; the {@link Mapping#COMPRESSED} mapping keeps it instead in a {@link
+ * RowSet}, reducing considerably the memory used on large tables, while the
+ * {@link Mapping#LOW_MEMORY} mapping keeps only the view to model array, and
+ * no array at all if no row is filtered out.</p>
+ *
  * @author  Luis M Pena - lu@coderazzi.net
  */
 public class TableModelFilter extends AbstractTableModel
@@ -46,9 +64,24 @@ public class TableModelFilter extends AbstractTableModel
 
     private static final long serialVersionUID = 8464799419424149436L;
 
-    /** Mapping from view rows to model rows. */
+    /** Number of rows evaluated on each batch call to the filter. */
+    private static final int FILTER_BLOCK = 4096;
+
+    /**
+     * Mapping from view rows to model rows; the view row i is stored at
+     * position head + i, as the model row plus offset.
+     */
     private int rowsMapper[] = new int[0];
 
+    /** Position in rowsMapper of the first view row, on STREAMING mapping. */
+    private int head;
+
+    /**
+     * Number of rows removed from the front of the model since the rowsMapper
+     * values were computed, on STREAMING mapping.
+     */
+    private int offset;
+
     /** Number of valid elements in rowsMapper. */
     private int validRows = 0;
 
@@ -61,9 +94,34 @@ public class TableModelFilter extends AbstractTableModel
     /** Whether the information in viewsMapper is up to date. */
     private boolean viewMap;
 
+    /** The mapping representation. */
+    private Mapping mapping = Mapping.ARRAYS;
+
+    /** The model rows passing the filter, on COMPRESSED mapping. */
+    private RowSet rowSet;
+
+    /** Set if rowSet was returned by getVisibleRows, and cannot be modified. */
+    private boolean rowSetShared;
+
+    /** Set, on LOW_MEMORY mapping, if no row is filtered out. */
+    private boolean identity;
+
+    /** Number of rows in the model on the last filter evaluation. */
+    private int modelRows;
+
+    /** Nesting level of the bulk updates in progress. */
+    private int updates;
+
+    /** The events received during a bulk update. */
+    private TableModelEventsCollector collector;
+
     /** Listener to the original tableModel events. */
     private TableModelListener tableModelListener = new TableListener();
 
+    /** Listeners notified of the model events before the filter. */
+    private List<TableModelListener> modelListeners =
+        new ArrayList<TableModelListener>();
+
     /** The RowFilter.Entry instance passed to the filter. */
     private RowFilterEntry rowFilterEntry = new RowFilterEntry();
 
@@ -87,6 +145,10 @@ public class TableModelFilter extends AbstractTableModel
         }
 
         this.tableModel = tableModel;
+        if (collector != null) {
+            // the bulk update continues on the new model
+            collector = new TableModelEventsCollector(tableModel);
+        }
 
         if (this.tableModel != null) {
             this.tableModel.addTableModelListener(tableModelListener);
@@ -96,6 +158,107 @@ public class TableModelFilter extends AbstractTableModel
         fireTableStructureChanged();
     }
 
+    /**
+     * Sets the representation of the mapping between view and model rows.
+     */
+    public void setMapping(Mapping mapping) {
+        if (mapping != this.mapping) {
+            this.mapping = mapping;
+            if (tableModel != null) {
+                reapplyFilter();
+            }
+        }
+    }
+
+    /** Returns the representation of the mapping. */
+    public Mapping getMapping() {
+        return mapping;
+    }
+
+    /**
+     * Returns the model rows currently passing the filter. The returned set
+     * must not be modified, and does not follow later model changes.
+     */
+    public RowSet getVisibleRows() {
+        if (rowSet != null) {
+            rowSetShared = true;
+
+            return rowSet;
+        }
+
+        RowSet ret = new RowSet();
+        if (identity) {
+            ret.add(0, validRows);
+        } else {
+            for (int i = head; i < (head + validRows); i++) {
+                ret.add(rowsMapper[i] - offset);
+            }
+        }
+
+        ret.optimize();
+
+        return ret;
+    }
+
+    /**
+     * Adds a listener to the events of the underlying model, notified before
+     * the filter handles them, so that any cache used by the filter can be
+     * updated first.<br>
+     * Unlike the listeners added with {@link #addTableModelListener(
+     * TableModelListener)}, they receive the events as sent by the model,
+     * also during a bulk update.
+     */
+    public void addModelListener(TableModelListener listener) {
+        modelListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link
+     * #addModelListener(TableModelListener)}.
+     */
+    public void removeModelListener(TableModelListener listener) {
+        modelListeners.remove(listener);
+    }
+
+    /**
+     * Starts a bulk update on the model: the events received until the
+     * matching {@link #endUpdate()} call are accumulated, and the filter is
+     * then updated only once.<br>
+     * Calls can be nested, in which case the update ends with the outermost
+     * endUpdate call.<br>
+     * Until then, the view keeps the previous rows: if the model removes rows
+     * meanwhile, the view rows no longer in the model show no values, and
+     * other rows can show shifted values, so an update should not span
+     * several events in the event dispatch thread.
+     */
+    public void beginUpdate() {
+        if (updates++ == 0) {
+            collector = new TableModelEventsCollector(tableModel);
+        }
+    }
+
+    /**
+     * Ends a bulk update, updating the filter for the accumulated events and
+     * sending to the listeners the minimal set of events.
+     */
+    public void endUpdate() {
+        if ((updates > 0) && (--updates == 0)) {
+            TableModelEventsCollector events = collector;
+            collector = null;
+            for (TableModelEvent e : events.getEvents()) {
+                if (modelChanged(e)) {
+                    // the reapplied filter covers the next events
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Returns true if a bulk update is in progress. */
+    public boolean isUpdating() {
+        return updates > 0;
+    }
+
     /** Handles structure modifications in the model. */
     void handleModifiedModel() {
         rowFilterEntry.columns = tableModel.getColumnCount();
@@ -116,11 +279,44 @@ public class TableModelFilter extends AbstractTableModel
 
     /** Returns the location of index in terms of the underlying model. */
     public int convertRowIndexToModel(int index) {
-        return rowsMapper[index];
+        if (identity) {
+            return index;
+        }
+
+        return (rowSet == null) ? (rowsMapper[head + index] - offset)
+                                : rowSet.select(index);
     }
 
     /** Returns the location of index in terms of the view. */
     public int convertRowIndexToView(int index) {
+        if (identity) {
+            return index;
+        }
+
+        if (rowSet != null) {
+            return rowSet.indexOf(index);
+        }
+
+        if (mapping != Mapping.ARRAYS) {
+            // rowsMapper is sorted: binary search
+            int search = index + offset;
+            int low = head;
+            int high = head + validRows - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int row = rowsMapper[mid];
+                if (row < search) {
+                    low = mid + 1;
+                } else if (row > search) {
+                    high = mid - 1;
+                } else {
+                    return mid - head;
+                }
+            }
+
+            return -1;
+        }
+
         if (!viewMap) {
             viewMap = true;
             viewsMapper = resizeArray(viewsMapper, tableModel.getRowCount());
@@ -155,17 +351,237 @@ public class TableModelFilter extends AbstractTableModel
         viewMap = false;
 
         int rows = tableModel.getRowCount();
+        modelRows = rows;
+        identity = false;
+        head = offset = 0;
+        if (mapping == Mapping.STREAMING) {
+            rowSet = null;
+            viewsMapper = new int[0];
+            validRows = 0;
+            if (tableFilter == null) {
+                rowsMapper = new int[rows + (rows / 2) + 1];
+                for (int j = 0; j < rows; j++) {
+                    rowsMapper[validRows++] = j;
+                }
+            } else {
+                // room is left for the rows to append
+                BitSet included = evaluateFilter(0, rows);
+                int size = included.cardinality();
+                rowsMapper = new int[size + (size / 2) + 1];
+                for (int j = included.nextSetBit(0); j >= 0;
+                        j = included.nextSetBit(j + 1)) {
+                    rowsMapper[validRows++] = j;
+                }
+            }
+
+            return;
+        }
+
+        if (mapping == Mapping.LOW_MEMORY) {
+            rowSet = null;
+            viewsMapper = new int[0];
+
+            BitSet included = (tableFilter == null) ? null
+                                                    : evaluateFilter(0, rows);
+            validRows = (included == null) ? rows : included.cardinality();
+            identity = validRows == rows;
+            if (identity) {
+                rowsMapper = new int[0];
+            } else {
+                if (rowsMapper.length != validRows) {
+                    rowsMapper = new int[validRows];
+                }
+
+                int i = 0;
+                for (int j = included.nextSetBit(0); j >= 0;
+                        j = included.nextSetBit(j + 1)) {
+                    rowsMapper[i++] = j;
+                }
+            }
+
+            return;
+        }
+
+        if (mapping == Mapping.COMPRESSED) {
+            rowsMapper = viewsMapper = new int[0];
+
+            // the set is recreated, as it could be shared via getVisibleRows
+            RowSet set = new RowSet();
+            if (tableFilter == null) {
+                set.add(0, rows);
+            } else {
+                set.add(evaluateFilter(0, rows), 0, rows);
+            }
+
+            set.optimize();
+            rowSet = set;
+            rowSetShared = false;
+            validRows = set.size();
+
+            return;
+        }
+
+        rowSet = null;
         rowsMapper = resizeArray(rowsMapper, rows);
         validRows = 0;
 
-        for (int j = 0; j < rows; j++) {
-            rowFilterEntry.modelRow = j;
-            if ((tableFilter == null) || tableFilter.include(rowFilterEntry)) {
+        if (tableFilter == null) {
+            for (int j = 0; j < rows; j++) {
                 rowsMapper[validRows++] = j;
             }
+        } else {
+            BitSet included = evaluateFilter(0, rows);
+            for (int j = included.nextSetBit(0); j >= 0;
+                    j = included.nextSetBit(j + 1)) {
+                rowsMapper[validRows++] = j;
+            }
+        }
+    }
+
+    /**
+     * Evaluates the filter on the rows between from (inclusive) and to
+     * (exclusive), returning those included.
+     */
+    private BitSet evaluateFilter(int from, int to) {
+        BitSet ret = new BitSet(to);
+        for (int j = from; j < to; j += FILTER_BLOCK) {
+            tableFilter.include(rowFilterEntry, j,
+                Math.min(to, j + FILTER_BLOCK), ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Handles rows appended at the end of the model, evaluating the filter
+     * only on them, and notifying the listeners of the new visible rows.
+     */
+    void appendRows(int from, int to) {
+        int count = to - from;
+        int included[] = new int[count];
+        int size = 0;
+        if (tableFilter == null) {
+            for (int j = from; j < to; j++) {
+                included[size++] = j;
+            }
+        } else if (count < FILTER_BLOCK) {
+            // small appends avoid allocating a BitSet covering the model
+            for (int j = from; j < to; j++) {
+                rowFilterEntry.modelRow = j;
+                if (tableFilter.include(rowFilterEntry)) {
+                    included[size++] = j;
+                }
+            }
+        } else {
+            BitSet set = evaluateFilter(from, to);
+            for (int j = set.nextSetBit(from); j >= 0;
+                    j = set.nextSetBit(j + 1)) {
+                included[size++] = j;
+            }
+        }
+
+        int first = validRows;
+        modelRows = to;
+        viewMap = false;
+        if (rowSet != null) {
+            if (rowSetShared) {
+                rowSet = rowSet.copy();
+                rowSetShared = false;
+            }
+
+            for (int i = 0; i < size; i++) {
+                rowSet.add(included[i]);
+            }
+
+            validRows = rowSet.size();
+        } else if (identity && (size == count)) {
+            validRows += size;
+        } else {
+            if (identity) {
+                identity = false;
+                rowsMapper = new int[validRows + size];
+                for (int i = 0; i < validRows; i++) {
+                    rowsMapper[i] = i;
+                }
+            } else {
+                ensureMapperCapacity(validRows + size);
+            }
+
+            int end = head + validRows;
+            for (int i = 0; i < size; i++) {
+                rowsMapper[end + i] = included[i] + offset;
+            }
+
+            validRows += size;
+        }
+
+        if (validRows > first) {
+            fireTableRowsInserted(first, validRows - 1);
+        }
+    }
+
+    /**
+     * Handles, on STREAMING mapping, the removal of the given number of rows
+     * from the front of the model: the remaining rows just move the offset,
+     * so the filter is not evaluated at all.
+     */
+    void removeFrontRows(int count) {
+        offset += count;
+        modelRows -= count;
+        viewMap = false;
+
+        // first position whose row remains in the model
+        int low = head;
+        int high = head + validRows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rowsMapper[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int removed = low - head;
+        head = low;
+        validRows -= removed;
+        if (validRows == 0) {
+            head = offset = 0;
+        } else if (offset > modelRows) {
+            // rebases the values, so they cannot overflow
+            moveMapper(rowsMapper);
+        }
+
+        if (removed > 0) {
+            fireTableRowsDeleted(0, removed - 1);
+        }
+    }
+
+    /**
+     * Ensures that rowsMapper can hold the given number of rows from its
+     * head, moving the rows to the start of the array if needed.
+     */
+    private void ensureMapperCapacity(int capacity) {
+        if ((head + capacity) > rowsMapper.length) {
+            // growing when mostly full amortizes the moves on STREAMING
+            moveMapper((capacity > ((rowsMapper.length / 3) * 2))
+                    ? new int[capacity + (capacity / 2) + 1] : rowsMapper);
         }
     }
 
+    /**
+     * Moves the rows in rowsMapper to the start of the given array, which
+     * becomes the new rowsMapper, removing the offset from their values.
+     */
+    private void moveMapper(int target[]) {
+        for (int i = 0; i < validRows; i++) {
+            target[i] = rowsMapper[head + i] - offset;
+        }
+
+        rowsMapper = target;
+        head = offset = 0;
+    }
+
     @Override public Class<?> getColumnClass(int columnIndex) {
         return tableModel.getColumnClass(columnIndex);
     }
@@ -183,27 +599,74 @@ public class TableModelFilter extends AbstractTableModel
     }
 
     public Object getValueAt(int rowIndex, int columnIndex) {
-        return tableModel.getValueAt(convertRowIndexToModel(rowIndex),
-                columnIndex);
+        int row = convertRowIndexToModel(rowIndex);
+
+        return isModelRow(row) ? tableModel.getValueAt(row, columnIndex)
+                               : null;
     }
 
     @Override public boolean isCellEditable(int rowIndex, int columnIndex) {
-        return tableModel.isCellEditable(convertRowIndexToModel(rowIndex),
-                columnIndex);
+        int row = convertRowIndexToModel(rowIndex);
+
+        return isModelRow(row) && tableModel.isCellEditable(row, columnIndex);
     }
 
     @Override public void setValueAt(Object value,
                                      int    rowIndex,
                                      int    columnIndex) {
-        tableModel.setValueAt(value, convertRowIndexToModel(rowIndex),
-            columnIndex);
+        int row = convertRowIndexToModel(rowIndex);
+        if (isModelRow(row)) {
+            tableModel.setValueAt(value, row, columnIndex);
+        }
+    }
+
+    /**
+     * Returns true if the given row, obtained from the mapping, exists in the
+     * model; during a bulk update the mapping can refer to removed rows.
+     */
+    private boolean isModelRow(int row) {
+        return (updates == 0) || (row < tableModel.getRowCount());
+    }
+
+    /** Representations of the mapping between view and model rows. */
+    public enum Mapping {
+
+        /**
+         * Plain arrays, with constant time conversions, using 8 bytes per
+         * model row.
+         */
+        ARRAYS,
+
+        /**
+         * A {@link RowSet}, with logarithmic time conversions, using at most
+         * one bit per model row, and usually much less.
+         */
+        COMPRESSED,
+
+        /**
+         * A single view to model array, only created if some row is filtered
+         * out, using then 4 bytes per visible row, and no memory otherwise.
+         * Conversions to the model are constant time; conversions to the
+         * view are a binary search, logarithmic on the number of visible
+         * rows (around 25 comparisons on 50M rows), and constant time if no
+         * row is filtered out.
+         */
+        LOW_MEMORY,
+
+        /**
+         * As LOW_MEMORY, but always keeping the view to model array, for
+         * models that append rows at the end and remove them from the front:
+         * the appended rows are filtered on arrival, and removing rows from
+         * the front just shifts the mapping, without evaluating the filter.
+         */
+        STREAMING
     }
 
     /**
      * Private implementation of the {@link RowFilter.Entry}, to access the
      * elements in the table row.
      */
-    class RowFilterEntry extends RowFilter.Entry {
+    class RowFilterEntry extends RowFilter.BatchEntry {
         int columns;
         int modelRow;
 
@@ -215,6 +678,14 @@ public class TableModelFilter extends AbstractTableModel
             return modelRow;
         }
 
+        @Override public int getRow() {
+            return modelRow;
+        }
+
+        @Override public void setRow(int row) {
+            modelRow = row;
+        }
+
         @Override public TableModel getModel() {
             return tableModel;
         }
@@ -224,23 +695,57 @@ public class TableModelFilter extends AbstractTableModel
         }
     }
 
+    /**
+     * Updates the filter for a change in the model, returning true if the
+     * filter is reapplied on the whole model.<br>
+     * On a deletion at the front, the model can hold already the rows of a
+     * later insertion, if the events are summarized after a bulk update.
+     */
+    boolean modelChanged(TableModelEvent e) {
+        if ((tableFilter == null) && (mapping != Mapping.STREAMING)) {
+            fireTableChanged(e);
+        } else if (e.getFirstRow() == TableModelEvent.HEADER_ROW) {
+            handleModifiedModel();
+            fireTableChanged(e);
+
+            return true;
+        } else if ((e.getType() == TableModelEvent.UPDATE)
+                && (e.getLastRow() != Integer.MAX_VALUE)) {
+            fireTableChanged(e);
+        } else if ((e.getType() == TableModelEvent.INSERT)
+                && (e.getFirstRow() == modelRows)
+                && (e.getLastRow() == (tableModel.getRowCount() - 1))) {
+            appendRows(modelRows, e.getLastRow() + 1);
+        } else if ((mapping == Mapping.STREAMING)
+                && (e.getType() == TableModelEvent.DELETE)
+                && (e.getFirstRow() == 0) && (e.getLastRow() < modelRows)
+                && ((modelRows - e.getLastRow() - 1)
+                    <= tableModel.getRowCount())) {
+            removeFrontRows(e.getLastRow() + 1);
+        } else {
+            reapplyFilter();
+            fireTableDataChanged();
+
+            return true;
+        }
+
+        return false;
+    }
+
     /**
      * Private {@link TableModelListener} to follow the original table model
      * changes.
      */
     class TableListener implements TableModelListener {
         public void tableChanged(TableModelEvent e) {
-            if (tableFilter == null) {
-                fireTableChanged(e);
-            } else if (e.getFirstRow() == TableModelEvent.HEADER_ROW) {
-                handleModifiedModel();
-                fireTableChanged(e);
-            } else if ((e.getType() == TableModelEvent.UPDATE)
-                    && (e.getLastRow() != Integer.MAX_VALUE)) {
-                fireTableChanged(e);
+            for (TableModelListener listener : modelListeners) {
+                listener.tableChanged(e);
+            }
+
+            if (collector != null) {
+                collector.collect(e);
             } else {
-                reapplyFilter();
-                fireTableDataChanged();
+                modelChanged(e);
             }
         }
     }
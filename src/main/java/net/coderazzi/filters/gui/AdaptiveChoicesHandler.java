@@ -0,0 +1,715 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JTable;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.TableModel;
+
+import net.coderazzi.filters.IFilter;
+import net.coderazzi.filters.artifacts.ITableModelFilter;
+import net.coderazzi.filters.artifacts.RowFilter;
+import net.coderazzi.filters.gui.editor.FilterEditor;
+
+
+/**
+ * Internal class to handle choices with adaptive behaviour<br>
+ * The choices on each editor include only the values on the rows that pass
+ * all the other filters.<br>
+ * For each filter, the handler keeps the set of rows it rejects; for each row,
+ * the number of filters rejecting it, and the XOR of their identifiers -which
+ * identifies the rejecting filter when only one filter rejects the row-. A row
+ * contributes to the choices of an editor if no filter rejects it, or if the
+ * only rejecting filter is the editor's filter.<br>
+ * For each editor, each row's value is mapped into an identifier, keeping the
+ * number of contributing rows per value. Filter and model changes update these
+ * counts incrementally, and the editors receive only the choices that appear
+ * or disappear.<br>
+ * In ADAPTIVE mode, those counts are also displayed with each choice: they
+ * are the rows that would remain if the choice were selected. They are only
+ * sent when the editor's choices are displayed.<br>
+ * The rows are handled in model coordinates: the handler listens to the
+ * table's underlying model, and the filter it provides to the {@link
+ * ITableModelFilter} just checks the precomputed state. The state of each row
+ * is kept from a head position, so rows deleted from the front just move it.
+ */
+class AdaptiveChoicesHandler extends ChoicesHandler {
+
+    private boolean interrupted = true;
+    // the underlying model, null if not available
+    private TableModel model;
+    // number of rows in the model currently handled
+    private int rows;
+    // position of the first row in the row arrays and rejected sets
+    private int head;
+    // number of filters rejecting each row
+    private int rejectCount[] = new int[0];
+    // XOR of the identifiers of the filters rejecting each row
+    private int rejectXor[] = new int[0];
+    private Map<IFilter, FilterInfo> filtersInfo =
+        new HashMap<IFilter, FilterInfo>();
+    private List<EditorInfo> editorsInfo = new ArrayList<EditorInfo>();
+    private int lastFilterId;
+    // entry used to filter rows
+    private RowEntry rowEntry;
+    private RowFilter rowFilter = new AdaptiveRowFilter();
+
+    public AdaptiveChoicesHandler(FiltersHandler handler) {
+        super(handler);
+    }
+
+    @Override public RowFilter getRowFilter() {
+        if (!interrupted && (model != null)) {
+            verifyFilters();
+            // the events on the tracked model are received before the model
+            // filter handles them, as reported by the FiltersHandler
+            setEnableTableModelEvents(true);
+        }
+
+        return rowFilter;
+    }
+
+    @Override public boolean setInterrupted(boolean interrupted) {
+        if (this.interrupted != interrupted) {
+            this.interrupted = interrupted;
+            if (interrupted) {
+                setEnableTableModelEvents(false);
+                clear();
+            } else {
+                rebuild();
+            }
+        }
+
+        return !interrupted; // filter should be updated
+    }
+
+    @Override public void editorUpdated(FilterEditor editor) {
+        if (!interrupted && (model != null)) {
+            initEditorChoices(editor);
+        }
+    }
+
+    @Override public boolean filterUpdated(IFilter iFilter,
+                                           boolean retInfoRequired) {
+        if (interrupted || (model == null)) {
+            return true;
+        }
+
+        FilterInfo info = filtersInfo.get(iFilter);
+        if (info == null) {
+            // new filter, added without filter operation notifications
+            rebuild();
+
+            return true;
+        }
+
+        ensureRows();
+
+        BitSet rejected = evaluate(iFilter, 0, rows);
+        if (retInfoRequired && !anyRowPasses(info, rejected)) {
+            return false;
+        }
+
+        BitSet changed = (BitSet) rejected.clone();
+        changed.xor(info.rejected.get(head, head + rows));
+        for (int row = changed.nextSetBit(0); row >= 0;
+                row = changed.nextSetBit(row + 1)) {
+            boolean reject = rejected.get(row);
+            info.rejected.set(head + row, reject);
+            updateRejection(info, row, reject);
+        }
+
+        flushChoices();
+
+        return true;
+    }
+
+    @Override public void filterOperation(boolean start) {
+        // the end of the operation implies a full rebuild
+        handler.enableNotifications(!start);
+    }
+
+    @Override public void filterEnabled(IFilter filter) {
+        if (!interrupted && (model != null)) {
+            for (FilterEditor editor : handler.getEditors()) {
+                if (editor.getFilter() == filter) {
+                    initEditorChoices(editor);
+
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override public void allFiltersDisabled() {
+        // nothing to do, the state is kept updated
+    }
+
+    @Override public void tableChanged(TableModelEvent e) {
+        if (interrupted || (model == null) || (e.getSource() != model)) {
+            return;
+        }
+
+        int first = e.getFirstRow();
+        int last = e.getLastRow();
+        if ((first == TableModelEvent.HEADER_ROW) || (first < 0)
+                || (last == Integer.MAX_VALUE)) {
+            rebuild();
+
+            return;
+        }
+
+        switch (e.getType()) {
+
+        case TableModelEvent.INSERT:
+
+            if ((first <= rows)
+                    && ((last - first) == (model.getRowCount() - rows - 1))) {
+                insertRows(first, last - first + 1);
+            }
+
+            break;
+
+        case TableModelEvent.DELETE:
+
+            if (last < rows) {
+                deleteRows(first, last - first + 1);
+                if (rows < model.getRowCount()) {
+                    // after a bulk update, the inserted rows are reported next
+                    return;
+                }
+            }
+
+            break;
+
+        default:
+
+            if (last < rows) {
+                updateRows(first, last);
+            }
+
+            break;
+        }
+
+        ensureRows();
+    }
+
+    @Override protected void tableUpdated(TableModel model,
+                                          int        eventType,
+                                          int        firstRow,
+                                          int        lastRow,
+                                          int        column) {
+        // not used, the events are directly handled on tableChanged
+    }
+
+    /** Discards all the information on the rows and filters. */
+    private void clear() {
+        model = null;
+        rows = head = 0;
+        rejectCount = new int[0];
+        rejectXor = new int[0];
+        filtersInfo.clear();
+        editorsInfo.clear();
+        rowEntry = null;
+    }
+
+    /** Recreates all the information, setting the choices on all editors. */
+    private void rebuild() {
+        clear();
+
+        JTable table = handler.getTable();
+        if (table == null) {
+            return;
+        }
+
+        model = getEventsModel(table);
+        if (model == null) {
+            return;
+        }
+
+        setEnableTableModelEvents(true);
+        rows = model.getRowCount();
+        rejectCount = new int[rows];
+        rejectXor = new int[rows];
+
+        Collection<FilterEditor> eds = handler.getEditors();
+        rowEntry = new RowEntry(model,
+                eds.toArray(new FilterEditor[eds.size()]));
+        lastFilterId = 0;
+        for (IFilter filter : handler.getFilters()) {
+            FilterInfo info = new FilterInfo(++lastFilterId);
+            info.rejected = evaluate(filter, 0, rows);
+            for (int row = info.rejected.nextSetBit(0); row >= 0;
+                    row = info.rejected.nextSetBit(row + 1)) {
+                rejectCount[row]++;
+                rejectXor[row] ^= info.id;
+            }
+
+            filtersInfo.put(filter, info);
+        }
+
+        for (FilterEditor editor : eds) {
+            initEditorChoices(editor);
+        }
+    }
+
+    /** Rebuilds the whole information if the number of rows is not valid. */
+    private void ensureRows() {
+        if (rows != model.getRowCount()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuilds the whole information if the filters in the handler do not
+     * match the known filters.
+     */
+    private void verifyFilters() {
+        Set<IFilter> filters = handler.getFilters();
+        if ((filters.size() != filtersInfo.size())
+                || !filtersInfo.keySet().containsAll(filters)) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Initializes the choices in the given editor.<br>
+     * It can update the mode of the editor, from ENABLED to ENUMS (in case of
+     * enumerations), and from ENUMS to DISABLED (for no enumerations), as the
+     * {@link NonAdaptiveChoicesHandler}; enumerations are however handled
+     * adaptively in ADAPTIVE mode. The AUTO mode only decides whether to
+     * display choices.
+     */
+    private void initEditorChoices(FilterEditor editor) {
+        for (int i = editorsInfo.size() - 1; i >= 0; i--) {
+            if (editorsInfo.get(i).editor == editor) {
+                editorsInfo.remove(i);
+            }
+        }
+
+        if (!editor.isEnabled()) {
+            return;
+        }
+
+        AutoChoices autoChoices = editor.getAutoChoices();
+        if (autoChoices == AutoChoices.DISABLED) {
+            editor.setChoices(editor.getCustomChoices());
+        } else {
+            Class<?> c = model.getColumnClass(editor.getModelIndex());
+            boolean asEnum = c.equals(Boolean.class) || c.isEnum();
+            if (autoChoices == AutoChoices.ADAPTIVE) {
+                createEditorInfo(editor, true);
+            } else if (asEnum && (autoChoices != AutoChoices.ENUMS)) {
+                editor.setAutoChoices(AutoChoices.ENUMS);
+            } else if (!asEnum && (autoChoices == AutoChoices.ENUMS)) {
+                editor.setAutoChoices(AutoChoices.DISABLED);
+            } else if (asEnum) {
+                Set choices = editor.getCustomChoices();
+                if (c.equals(Boolean.class)) {
+                    choices.add(true);
+                    choices.add(false);
+                } else {
+                    for (Object each : c.getEnumConstants()) {
+                        choices.add(each);
+                    }
+                }
+
+                editor.setChoices(choices);
+            } else if ((autoChoices == AutoChoices.AUTO)
+                    && (resolveAutoChoices(model, editor.getModelIndex())
+                        == AutoChoices.DISABLED)) {
+                editor.setChoices(editor.getCustomChoices());
+            } else {
+                createEditorInfo(editor, false);
+            }
+        }
+    }
+
+    /** Creates the information to track the choices of the given editor. */
+    private void createEditorInfo(FilterEditor editor, boolean adaptive) {
+        FilterInfo filterInfo = filtersInfo.get(editor.getFilter());
+        EditorInfo info = new EditorInfo(editor,
+                (filterInfo == null) ? 0 : filterInfo.id, adaptive);
+        info.rows = rows;
+        for (int row = 0; row < rows; row++) {
+            info.setValue(model, row);
+            if (info.contributes(row)) {
+                info.count(row, 1);
+            }
+        }
+
+        editorsInfo.add(info);
+        editor.setChoices(info.fillChoices(editor.getCustomChoices()));
+        if (adaptive) {
+            info.publishCounts();
+        }
+    }
+
+    /**
+     * Returns the rows in the given range rejected by the filter, which are
+     * none if the filter is disabled.
+     */
+    private BitSet evaluate(IFilter filter, int from, int to) {
+        BitSet ret = new BitSet(to);
+        if (filter.isEnabled() && (from < to)) {
+            if (filter instanceof RowFilter) {
+                ((RowFilter) filter).include(rowEntry, from, to, ret);
+            } else {
+                for (int row = from; row < to; row++) {
+                    rowEntry.row = row;
+                    if (filter.include(rowEntry)) {
+                        ret.set(row);
+                    }
+                }
+            }
+
+            ret.flip(from, to);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns true if any row would pass all the filters, if the given filter
+     * rejects the specified rows.
+     */
+    private boolean anyRowPasses(FilterInfo info, BitSet rejected) {
+        for (int row = rejected.nextClearBit(0); row < rows;
+                row = rejected.nextClearBit(row + 1)) {
+            int count = rejectCount[head + row];
+            if ((count == 0)
+                    || ((count == 1) && info.rejected.get(head + row))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /** Updates the rejection state of a row for the given filter. */
+    private void updateRejection(FilterInfo info, int row, boolean rejected) {
+        for (EditorInfo editor : editorsInfo) {
+            if (editor.adaptive && editor.contributes(row)) {
+                editor.count(row, -1);
+            }
+        }
+
+        rejectCount[head + row] += rejected ? 1 : -1;
+        rejectXor[head + row] ^= info.id;
+        for (EditorInfo editor : editorsInfo) {
+            if (editor.adaptive && editor.contributes(row)) {
+                editor.count(row, 1);
+            }
+        }
+    }
+
+    /** Handles the insertion of rows in the model. */
+    private void insertRows(int first, int count) {
+        int end = first + count;
+        ensureCapacity(rows + count);
+        System.arraycopy(rejectCount, head + first, rejectCount, head + end,
+            rows - first);
+        System.arraycopy(rejectXor, head + first, rejectXor, head + end,
+            rows - first);
+        for (EditorInfo editor : editorsInfo) {
+            editor.insertRows(first, count);
+        }
+
+        for (int row = head + first; row < (head + end); row++) {
+            rejectCount[row] = 0;
+            rejectXor[row] = 0;
+        }
+
+        for (Map.Entry<IFilter, FilterInfo> entry : filtersInfo.entrySet()) {
+            FilterInfo info = entry.getValue();
+            if (first < rows) {
+                info.rejected = shift(info.rejected, head + first, count);
+            }
+
+            BitSet rejected = evaluate(entry.getKey(), first, end);
+            for (int row = rejected.nextSetBit(first); row >= 0;
+                    row = rejected.nextSetBit(row + 1)) {
+                info.rejected.set(head + row);
+                rejectCount[head + row]++;
+                rejectXor[head + row] ^= info.id;
+            }
+        }
+
+        rows += count;
+
+        for (EditorInfo editor : editorsInfo) {
+            for (int row = first; row < end; row++) {
+                editor.setValue(model, row);
+                if (editor.contributes(row)) {
+                    editor.count(row, 1);
+                }
+            }
+        }
+
+        flushChoices();
+    }
+
+    /** Handles the deletion of rows in the model. */
+    private void deleteRows(int first, int count) {
+        int end = first + count;
+        for (EditorInfo editor : editorsInfo) {
+            for (int row = first; row < end; row++) {
+                if (editor.contributes(row)) {
+                    editor.count(row, -1);
+                }
+            }
+
+            editor.deleteRows(first, count);
+        }
+
+        if (first == 0) {
+            for (FilterInfo info : filtersInfo.values()) {
+                info.rejected.clear(head, head + count);
+            }
+
+            head += count;
+        } else {
+            System.arraycopy(rejectCount, head + end, rejectCount,
+                head + first, rows - end);
+            System.arraycopy(rejectXor, head + end, rejectXor, head + first,
+                rows - end);
+            for (FilterInfo info : filtersInfo.values()) {
+                info.rejected = shift(info.rejected, head + first, -count);
+            }
+        }
+
+        rows -= count;
+        flushChoices();
+    }
+
+    /** Handles the update of rows in the model. */
+    private void updateRows(int first, int last) {
+        int end = last + 1;
+        for (EditorInfo editor : editorsInfo) {
+            for (int row = first; row < end; row++) {
+                if (editor.contributes(row)) {
+                    editor.count(row, -1);
+                }
+            }
+        }
+
+        for (Map.Entry<IFilter, FilterInfo> entry : filtersInfo.entrySet()) {
+            FilterInfo info = entry.getValue();
+            BitSet rejected = evaluate(entry.getKey(), first, end);
+            for (int row = first; row < end; row++) {
+                boolean reject = rejected.get(row);
+                if (reject != info.rejected.get(head + row)) {
+                    info.rejected.set(head + row, reject);
+                    rejectCount[head + row] += reject ? 1 : -1;
+                    rejectXor[head + row] ^= info.id;
+                }
+            }
+        }
+
+        for (EditorInfo editor : editorsInfo) {
+            for (int row = first; row < end; row++) {
+                editor.setValue(model, row);
+                if (editor.contributes(row)) {
+                    editor.count(row, 1);
+                }
+            }
+        }
+
+        flushChoices();
+    }
+
+    /**
+     * Ensures that the row arrays can hold the given number of rows, moving
+     * the rows to the start of the arrays and rejected sets if needed.
+     */
+    private void ensureCapacity(int size) {
+        int capacity = rejectCount.length;
+        if ((head + size) > capacity) {
+            // growing when mostly full amortizes the moves
+            if (size > ((capacity / 3) * 2)) {
+                capacity = Math.max(size, capacity + (capacity >> 1));
+            }
+
+            rejectCount = move(rejectCount, capacity);
+            rejectXor = move(rejectXor, capacity);
+            for (FilterInfo info : filtersInfo.values()) {
+                info.rejected = info.rejected.get(head, head + rows);
+            }
+
+            head = 0;
+        }
+    }
+
+    /** Sends to the editors the choices that appeared or disappeared. */
+    private void flushChoices() {
+        for (EditorInfo editor : editorsInfo) {
+            editor.flushChoices();
+            if (editor.adaptive && editor.countsChanged) {
+                editor.publishCounts();
+            }
+        }
+    }
+
+    /**
+     * Moves the rows in the given array to the start of an array with the
+     * given capacity, which is the same array if its length matches.
+     */
+    private int[] move(int array[], int capacity) {
+        int ret[] = (capacity == array.length) ? array : new int[capacity];
+        System.arraycopy(array, head, ret, 0, rows);
+
+        return ret;
+    }
+
+    /**
+     * Returns a copy of the set, with count bits inserted at the given
+     * position -or removed, if count is negative-.
+     */
+    private static BitSet shift(BitSet set, int position, int count) {
+        BitSet ret = set.get(0, position);
+        int from = (count < 0) ? (position - count) : position;
+        for (int i = set.nextSetBit(from); i >= 0; i = set.nextSetBit(i + 1)) {
+            ret.set(i + count);
+        }
+
+        return ret;
+    }
+
+    /** Information kept for each filter. */
+    static class FilterInfo {
+        int id;
+        BitSet rejected;
+
+        FilterInfo(int id) {
+            this.id = id;
+        }
+    }
+
+    /** Information kept for each editor whose choices are tracked. */
+    class EditorInfo extends ChoicesCounter implements Runnable {
+        int filterId;
+        boolean adaptive;
+
+        EditorInfo(FilterEditor editor, int filterId, boolean adaptive) {
+            super(editor, model);
+            this.filterId = filterId;
+            this.adaptive = adaptive;
+        }
+
+        /** Returns true if the given row contributes to the choices. */
+        boolean contributes(int row) {
+            if (!adaptive) {
+                return true;
+            }
+
+            int count = rejectCount[head + row];
+
+            return (count == 0)
+                    || ((count == 1) && (rejectXor[head + row] == filterId));
+        }
+
+        /**
+         * Sends the row counts to the editor, if its choices are displayed,
+         * or else the first time they are required.
+         */
+        void publishCounts() {
+            if (editor.isChoicesDisplayed()) {
+                run();
+            } else {
+                countsChanged = false;
+                editor.setChoicesLoader(this);
+            }
+        }
+
+        /** {@link Runnable} interface, sends the row counts to the editor. */
+        public void run() {
+            if (editorsInfo.contains(this)) {
+                editor.setChoicesFrequencies(getCounts());
+            }
+        }
+    }
+
+    /**
+     * Filter provided to the table, using the precomputed state for the
+     * underlying model.
+     */
+    class AdaptiveRowFilter extends RowFilter {
+
+        @Override public boolean include(Entry entry) {
+            return isValid(entry) ? (rejectCount[head + entry.getRow()] == 0)
+                                  : handler.include(entry);
+        }
+
+        @Override protected void includeRange(RowFilter.BatchEntry entry,
+                                              int from, int to,
+                                              BitSet result) {
+            if (isValid(entry)) {
+                for (int row = from; row < to; row++) {
+                    if (rejectCount[head + row] == 0) {
+                        result.set(row);
+                    }
+                }
+            } else {
+                handler.include(entry, from, to, result);
+            }
+        }
+
+        @Override protected void includeRows(RowFilter.BatchEntry entry,
+                                             int rows[], int count,
+                                             BitSet result) {
+            if (isValid(entry)) {
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (rejectCount[head + row] == 0) {
+                        result.set(row);
+                    }
+                }
+            } else {
+                handler.include(entry, rows, count, result);
+            }
+        }
+
+        /** Returns true if the state can be used for the given entry. */
+        private boolean isValid(Entry entry) {
+            if (interrupted || (model == null)
+                    || (entry.getModel() != model)) {
+                return false;
+            }
+
+            ensureRows();
+
+            return model != null;
+        }
+    }
+}
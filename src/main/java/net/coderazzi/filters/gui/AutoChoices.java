@@ -41,5 +41,44 @@ public enum AutoChoices {
      * Choices extracted from the model, it is guaranteed that the choices
      * include all the model's values, and only those.
      */
-    ENABLED
+    ENABLED,
+
+    /**
+     * Choices extracted from the model as in ENABLED mode, but only the first
+     * time that the editor's popup is shown or that autocompletion requires
+     * them; they are then kept updated.<br>
+     * The extraction is performed in slices, showing meanwhile a loading row
+     * on the popup. Set on an adaptive header, it behaves as ENABLED.
+     */
+    LAZY,
+
+    /**
+     * Only the most frequent values in the model are included, displaying
+     * their row counts, plus a row to return to free text filtering if there
+     * are more values (see {@link FilterSettings#topChoices}).<br>
+     * The counts are approximate, but the memory and time required do not
+     * depend on the number of distinct values. Set on an adaptive header, it
+     * behaves as ENABLED.
+     */
+    TOP,
+
+    /**
+     * The mode is chosen for each column from an estimation of its number of
+     * distinct values: ENABLED for few values, DISABLED when most rows have a
+     * different value, and TOP otherwise (see {@link
+     * FilterSettings#autoChoicesMaxDistinct}). The estimation is repeated
+     * each time the table model is replaced. Set on an adaptive header, it
+     * behaves as ENABLED, unless the values are mostly unique.
+     */
+    AUTO,
+
+    /**
+     * Choices extracted from the model, including only the values on the rows
+     * that pass the filters of the other editors (and any other filter on the
+     * table), displaying for each value the number of rows that would remain
+     * if selected.<br>
+     * It requires setting this mode on the table filter header; set on a
+     * single editor of a non adaptive header, it behaves as ENABLED.
+     */
+    ADAPTIVE
 }
@@ -0,0 +1,335 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.table.TableModel;
+
+import net.coderazzi.filters.artifacts.IDictionaryModel;
+import net.coderazzi.filters.gui.editor.FilterEditor;
+
+
+/**
+ * Internal class to count, for the column associated to an editor, the rows
+ * holding each value.<br>
+ * Each row keeps the identifier of its value, so that its count can be
+ * decremented when the row is deleted or updated; rows deleted from the front
+ * just move the position of the first row. Values are identified by their
+ * dictionary code if the model is a {@link IDictionaryModel}.<br>
+ * The counts' changes are accumulated, and {@link #flushChoices()} sends to
+ * the editor only the values whose count reached or left zero; it also
+ * discards the values no longer held by any row, once they outnumber the
+ * values in use.<br>
+ * The values can be also read in two steps: {@link #readSnapshot(TableModel)}
+ * copies them from the model, and {@link #countSnapshot()} counts them, which
+ * can be done outside the event dispatch thread.
+ */
+class ChoicesCounter {
+
+    /** Minimum number of value identifiers before compacting them. */
+    private static final int COMPACT_THRESHOLD = 1024;
+
+    FilterEditor editor;
+    int column;
+    // number of rows handled
+    int rows;
+    // identifier of the value on each row, from the position start
+    private int valueIds[];
+    private int start;
+    private int counts[] = new int[16];
+    private IDictionaryModel dictionary;
+    private List<Object> values = new ArrayList<Object>();
+    private Map<Object, Integer> ids = new HashMap<Object, Integer>();
+    // number of value identifiers in use on the last compaction
+    private int usedIds;
+    // value identifiers whose count has reached / left zero
+    private BitSet touched = new BitSet();
+    private BitSet presentBefore = new BitSet();
+    // set when any count changes, see getCounts
+    boolean countsChanged;
+    // values read by readSnapshot, and dictionary values at that moment
+    private Object snapshot[];
+    private Object dictionaryValues[];
+
+    public ChoicesCounter(FilterEditor editor, TableModel model) {
+        this.editor = editor;
+        this.column = editor.getModelIndex();
+        this.valueIds = new int[model.getRowCount()];
+        if (model instanceof IDictionaryModel) {
+            dictionary = (IDictionaryModel) model;
+            if (!dictionary.isDictionaryColumn(column)) {
+                dictionary = null;
+            }
+        }
+    }
+
+    /** Reads the value at the given row, setting its identifier. */
+    public int setValue(TableModel model, int row) {
+        return (dictionary != null)
+            ? setValueId(row, dictionary.getDictionaryCode(row, column))
+            : setValue(row, model.getValueAt(row, column));
+    }
+
+    /** Sets the value at the given row (not for dictionary columns). */
+    private int setValue(int row, Object value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            values.add(value);
+            ids.put(value, id);
+        }
+
+        return setValueId(row, id);
+    }
+
+    private int setValueId(int row, int id) {
+        if (id >= counts.length) {
+            int grown[] = new int[Math.max(id + 1, counts.length * 2)];
+            System.arraycopy(counts, 0, grown, 0, counts.length);
+            counts = grown;
+        }
+
+        valueIds[start + row] = id;
+
+        return id;
+    }
+
+    /** Updates the number of rows for the value on the given row. */
+    public void count(int row, int delta) {
+        int id = valueIds[start + row];
+        int count = counts[id];
+        if (((count == 0) || ((count + delta) == 0)) && !touched.get(id)) {
+            touched.set(id);
+            presentBefore.set(id, count > 0);
+        }
+
+        counts[id] = count + delta;
+        countsChanged = true;
+    }
+
+    /** Makes space for count rows at the given position. */
+    public void insertRows(int first, int count) {
+        ensureCapacity(rows + count);
+        System.arraycopy(valueIds, start + first, valueIds,
+            start + first + count, rows - first);
+        rows += count;
+    }
+
+    /** Removes count rows at the given position. */
+    public void deleteRows(int first, int count) {
+        if (first == 0) {
+            start += count;
+        } else {
+            int end = start + first + count;
+            System.arraycopy(valueIds, end, valueIds, start + first,
+                rows - first - count);
+        }
+
+        rows -= count;
+    }
+
+    /**
+     * Ensures that the given number of rows can be handled, moving the rows
+     * to the start of the identifiers if needed.
+     */
+    public void ensureCapacity(int size) {
+        int capacity = valueIds.length;
+        if ((start + size) > capacity) {
+            // growing when mostly full amortizes the moves
+            int target[] = (size > ((capacity / 3) * 2))
+                ? new int[Math.max(size, capacity + (capacity >> 1))]
+                : valueIds;
+            System.arraycopy(valueIds, start, target, 0, rows);
+            valueIds = target;
+            start = 0;
+        }
+    }
+
+    /**
+     * Copies the values of all the rows in the model; for dictionary columns,
+     * only the codes, and the dictionary values, are copied.
+     */
+    public void readSnapshot(TableModel model) {
+        int modelRows = model.getRowCount();
+        start = rows = 0;
+        ensureCapacity(modelRows);
+        rows = modelRows;
+        if (dictionary != null) {
+            int size = dictionary.getDictionarySize(column);
+            dictionaryValues = new Object[size];
+            for (int code = 0; code < size; code++) {
+                dictionaryValues[code] = dictionary.getDictionaryValue(column,
+                        code);
+            }
+
+            for (int row = 0; row < rows; row++) {
+                valueIds[row] = dictionary.getDictionaryCode(row, column);
+            }
+        } else {
+            snapshot = new Object[rows];
+            for (int row = 0; row < rows; row++) {
+                snapshot[row] = model.getValueAt(row, column);
+            }
+        }
+    }
+
+    /**
+     * Counts the values copied by {@link #readSnapshot(TableModel)}; it can be
+     * called from any thread, if the counter is not accessed meanwhile.
+     */
+    public void countSnapshot() {
+        for (int row = 0; row < rows; row++) {
+            if (snapshot == null) {
+                setValueId(row, valueIds[start + row]);
+            } else {
+                setValue(row, snapshot[row]);
+            }
+
+            count(row, 1);
+        }
+
+        snapshot = null;
+    }
+
+    /** Discards the dictionary values copied as snapshot. */
+    public void releaseSnapshot() {
+        snapshot = null;
+        dictionaryValues = null;
+    }
+
+    /** Discards all the counts. */
+    public void reset() {
+        counts = new int[16];
+        values.clear();
+        ids.clear();
+        usedIds = 0;
+        touched.clear();
+        presentBefore.clear();
+    }
+
+    /** Adds to the given collection the values with any row, returning it. */
+    public Collection fillChoices(Collection fill) {
+        touched.clear();
+        presentBefore.clear();
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) {
+                fill.add(getValue(id));
+            }
+        }
+
+        return fill;
+    }
+
+    /** Returns the number of rows for each value with any row. */
+    public Map<Object, Integer> getCounts() {
+        Map<Object, Integer> ret = new HashMap<Object, Integer>();
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) {
+                ret.put(getValue(id), counts[id]);
+            }
+        }
+
+        countsChanged = false;
+
+        return ret;
+    }
+
+    /** Sends the choices that appeared or disappeared to the editor. */
+    public void flushChoices() {
+        if (!touched.isEmpty()) {
+            List<Object> added = new ArrayList<Object>();
+            List<Object> removed = new ArrayList<Object>();
+            for (int id = touched.nextSetBit(0); id >= 0;
+                    id = touched.nextSetBit(id + 1)) {
+                boolean present = counts[id] > 0;
+                if (present != presentBefore.get(id)) {
+                    (present ? added : removed).add(getValue(id));
+                }
+            }
+
+            touched.clear();
+            presentBefore.clear();
+            if (!removed.isEmpty()) {
+                editor.removeChoices(removed);
+            }
+
+            if (!added.isEmpty()) {
+                editor.addChoices(added);
+            }
+        }
+
+        if ((values.size() > COMPACT_THRESHOLD)
+                && (values.size() > (2 * usedIds)) && (snapshot == null)) {
+            compact();
+        }
+    }
+
+    /**
+     * Discards the values not held by any row, renumbering the identifiers of
+     * the remaining ones; it requires that no count change is pending.
+     */
+    private void compact() {
+        int remap[] = new int[values.size()];
+        List<Object> used = new ArrayList<Object>();
+        for (int row = start; row < (start + rows); row++) {
+            int id = valueIds[row];
+            if (remap[id] == 0) {
+                used.add(values.get(id));
+                remap[id] = used.size();
+            }
+
+            valueIds[row] = remap[id] - 1;
+        }
+
+        int compacted[] = new int[Math.max(16, used.size())];
+        ids.clear();
+        for (int id = 0; id < remap.length; id++) {
+            if (remap[id] > 0) {
+                compacted[remap[id] - 1] = counts[id];
+                ids.put(values.get(id), remap[id] - 1);
+            }
+        }
+
+        counts = compacted;
+        values = used;
+        usedIds = used.size();
+    }
+
+    private Object getValue(int id) {
+        if (dictionary == null) {
+            return values.get(id);
+        }
+
+        return (dictionaryValues != null)
+            ? dictionaryValues[id] : dictionary.getDictionaryValue(column, id);
+    }
+}
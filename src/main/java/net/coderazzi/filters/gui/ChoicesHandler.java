@@ -33,7 +33,10 @@ import javax.swing.event.TableModelListener;
 import javax.swing.table.TableModel;
 
 import net.coderazzi.filters.IFilter;
+import net.coderazzi.filters.artifacts.IDictionaryModel;
+import net.coderazzi.filters.artifacts.ITableModelFilter;
 import net.coderazzi.filters.artifacts.RowFilter;
+import net.coderazzi.filters.artifacts.TableModelEventsCollector;
 import net.coderazzi.filters.gui.editor.FilterEditor;
 
 
@@ -43,9 +46,32 @@ import net.coderazzi.filters.gui.editor.FilterEditor;
  */
 abstract class ChoicesHandler implements TableModelListener {
 
+    /** Maximum number of rows read to resolve the AUTO mode. */
+    private static final int AUTO_CHOICES_SAMPLE = 65536;
+
     private TableModel listenedModel;
     protected FiltersHandler handler;
 
+    /**
+     * Set if the listener is registered on the model; otherwise, the model is
+     * the one tracked by the FiltersHandler, which reports its changes.
+     */
+    private boolean listening;
+
+    /** The events received during a bulk update, if any. */
+    private TableModelEventsCollector collector;
+
+    /** Listener registered on the model, collecting during bulk updates. */
+    private TableModelListener modelListener = new TableModelListener() {
+        public void tableChanged(TableModelEvent e) {
+            if (collector == null) {
+                ChoicesHandler.this.tableChanged(e);
+            } else {
+                collector.collect(e);
+            }
+        }
+    };
+
     protected ChoicesHandler(FiltersHandler handler) {
         this.handler = handler;
     }
@@ -84,6 +110,47 @@ abstract class ChoicesHandler implements TableModelListener {
     /** Call triggered after all filters become disabled. */
     public abstract void allFiltersDisabled();
 
+    /**
+     * Resolves the AUTO mode for the given model column, returning ENABLED,
+     * TOP or DISABLED.<br>
+     * The number of distinct values is estimated on a sample of the rows: if
+     * small enough (see {@link FilterSettings#autoChoicesMaxDistinct}), all
+     * the values are displayed; if nearly every sampled row has a different
+     * value (see {@link FilterSettings#autoChoicesUniquePercent}), choices
+     * would be useless, and none is displayed. Otherwise, only the most
+     * frequent values are displayed.
+     */
+    protected AutoChoices resolveAutoChoices(TableModel model, int column) {
+        int rows = model.getRowCount();
+        double distinct;
+        int sampled;
+        if ((model instanceof IDictionaryModel)
+                && ((IDictionaryModel) model).isDictionaryColumn(column)) {
+            distinct = ((IDictionaryModel) model).getDictionarySize(column);
+            sampled = rows;
+        } else {
+            DistinctCountSketch sketch = new DistinctCountSketch();
+            sampled = Math.min(rows, AUTO_CHOICES_SAMPLE);
+            double step = (double) rows / Math.max(1, sampled);
+            for (int i = 0; i < sampled; i++) {
+                sketch.add(model.getValueAt((int) (i * step), column));
+            }
+
+            distinct = sketch.estimate();
+        }
+
+        if (distinct <= FilterSettings.autoChoicesMaxDistinct) {
+            return AutoChoices.ENABLED;
+        }
+
+        if ((distinct * 100) >= ((double) sampled
+                    * FilterSettings.autoChoicesUniquePercent)) {
+            return AutoChoices.DISABLED;
+        }
+
+        return AutoChoices.TOP;
+    }
+
     /** Reports a table update. */
     protected abstract void tableUpdated(TableModel model,
                                          int        eventType,
@@ -95,11 +162,37 @@ abstract class ChoicesHandler implements TableModelListener {
         int firstRow = e.getFirstRow();
         if (firstRow != TableModelEvent.HEADER_ROW) {
             TableModel model = (TableModel) e.getSource();
-            int lastRow = Math.min(model.getRowCount() - 1, e.getLastRow());
+            int lastRow = e.getLastRow();
+            if (e.getType() != TableModelEvent.DELETE) {
+                // deleted rows are already out of the model
+                lastRow = Math.min(model.getRowCount() - 1, lastRow);
+            }
+
             tableUpdated(model, e.getType(), firstRow, lastRow, e.getColumn());
         }
     }
 
+    /**
+     * Starts a bulk update: the table model events are accumulated until the
+     * call to {@link #endUpdate()}.
+     */
+    public void beginUpdate() {
+        if (listenedModel != null) {
+            collector = new TableModelEventsCollector(listenedModel);
+        }
+    }
+
+    /** Ends a bulk update, handling the accumulated events. */
+    public void endUpdate() {
+        TableModelEventsCollector events = collector;
+        collector = null;
+        if ((events != null) && (events.getModel() == listenedModel)) {
+            for (TableModelEvent e : events.getEvents()) {
+                tableChanged(e);
+            }
+        }
+    }
+
     /**
      * Sets whether to send table model events to the {@link ChoicesHandler}.
      */
@@ -108,27 +201,75 @@ abstract class ChoicesHandler implements TableModelListener {
             JTable table = handler.getTable();
             if (table != null) {
                 if (listenedModel != null) {
-                    if (listenedModel == table.getModel()) {
+                    if (listenedModel == getEventsModel(table)) {
                         return;
                     }
 
                     setEnableTableModelEvents(false);
                 }
 
-                listenedModel = table.getModel();
-                listenedModel.addTableModelListener(this);
+                listenedModel = getEventsModel(table);
+                updateListening();
+                if ((collector != null)
+                        && (collector.getModel() != listenedModel)) {
+                    collector = new TableModelEventsCollector(listenedModel);
+                }
             }
         } else if (listenedModel != null) {
-            listenedModel.removeTableModelListener(this);
+            if (listening) {
+                listenedModel.removeTableModelListener(modelListener);
+                listening = false;
+            }
+
             listenedModel = null;
         }
     }
 
+    /**
+     * Listens directly to the model changes, unless the model is tracked,
+     * and its changes reported, by the FiltersHandler: these are then
+     * received before the model filter handles them.
+     */
+    void updateListening() {
+        if (listenedModel != null) {
+            boolean listen = listenedModel != handler.getTrackedModel();
+            if (listen != listening) {
+                listening = listen;
+                if (listen) {
+                    listenedModel.addTableModelListener(modelListener);
+                } else {
+                    listenedModel.removeTableModelListener(modelListener);
+                }
+            }
+        }
+    }
+
+    /** Reports a change on the model tracked by the FiltersHandler. */
+    void trackedModelChanged(TableModelEvent e) {
+        if (!listening && (e.getSource() == listenedModel)) {
+            modelListener.tableChanged(e);
+        }
+    }
+
+    /**
+     * Returns the model whose events are sent to the handler: the model
+     * underlying the table's {@link ITableModelFilter}, if any, so that rows
+     * filtered out are not reported as deleted.
+     */
+    protected TableModel getEventsModel(JTable table) {
+        TableModel ret = table.getModel();
+        if (ret instanceof ITableModelFilter) {
+            ret = ((ITableModelFilter) ret).getModel();
+        }
+
+        return ret;
+    }
+
     /**
      * Basic RowFilter.Entry instance, used internally to handle the RowFilter
      * default filtering.
      */
-    static protected class RowEntry extends RowFilter.Entry {
+    static protected class RowEntry extends RowFilter.BatchEntry {
         private TableModel model;
         private int count;
         private Format formatters[];
@@ -157,6 +298,14 @@ abstract class ChoicesHandler implements TableModelListener {
             return row;
         }
 
+        @Override public int getRow() {
+            return row;
+        }
+
+        @Override public void setRow(int row) {
+            this.row = row;
+        }
+
         @Override public TableModel getModel() {
             return model;
         }
@@ -32,6 +32,7 @@ import java.awt.Graphics;
 import java.io.Serializable;
 import java.text.Format;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -40,6 +41,7 @@ import javax.swing.Icon;
 import javax.swing.JComponent;
 import javax.swing.UIManager;
 
+import net.coderazzi.filters.artifacts.ColumnFilter;
 import net.coderazzi.filters.artifacts.RowFilter;
 
 
@@ -96,9 +98,8 @@ public abstract class CustomChoice implements Serializable {
 		@Override public RowFilter getFilter(final IFilterEditor editor) {
             final int modelIndex = editor.getModelIndex();
 
-            return new RowFilter() {
-                @Override public boolean include(RowFilter.Entry entry) {
-                    Object o = entry.getValue(modelIndex);
+            return new ColumnFilter(modelIndex) {
+                @Override public boolean includeValue(Object o) {
                     if (o == null) {
                         return true;
                     }
@@ -166,9 +167,8 @@ public abstract class CustomChoice implements Serializable {
 				@Override public RowFilter getFilter(final IFilterEditor ed) {
                     final int index = ed.getModelIndex();
                     final Pattern pattern = (Pattern) choice;
-                    return new RowFilter() {
-                        @Override public boolean include(Entry entry) {                        	
-                            Object o = entry.getValue(index);
+                    return new ColumnFilter(index) {
+                        @Override public boolean includeValue(Object o) {
                             if (o==null){
                             	return false;
                             }
@@ -188,9 +188,8 @@ public abstract class CustomChoice implements Serializable {
                 final int index = editor.getModelIndex();
                 final String string = (choice instanceof String)
                     ? (String) choice : null;
-                return new RowFilter() {
-                    @Override public boolean include(Entry entry) {
-                        Object o = entry.getValue(index);
+                return new ColumnFilter(index) {
+                    @Override public boolean includeValue(Object o) {
                         if ((string != null) && (o instanceof String)
                                 && editor.isIgnoreCase()) {
                             return string.equalsIgnoreCase((String) o);
@@ -203,6 +202,41 @@ public abstract class CustomChoice implements Serializable {
         };
     }
 
+    /**
+     * Creates a CustomChoice that matches any of the given objects, with the
+     * provided representation.<br>
+     * Each row is checked with a single lookup, in a {@link EnumSet} if the
+     * objects are constants of an enumeration, or in a {@link HashSet}
+     * otherwise.
+     */
+    public static CustomChoice createAnyOf(Collection<?> choices, 
+                                           String        repr) {
+        boolean enums = !choices.isEmpty();
+        Class enumClass = null;
+        for (Object o : choices) {
+            if (!(o instanceof Enum) || ((enumClass != null) 
+                    && (enumClass != ((Enum) o).getDeclaringClass()))) {
+                enums = false;
+                break;
+            }
+            enumClass = ((Enum) o).getDeclaringClass();
+        }
+
+        final Set<?> set = enums 
+            ? EnumSet.copyOf((Collection) choices) : new HashSet(choices);
+        return new CustomChoice(repr) {
+            private static final long serialVersionUID = 4206364591548391327L;
+
+			@Override public RowFilter getFilter(IFilterEditor editor) {
+                return new ColumnFilter(editor.getModelIndex()) {
+                    @Override public boolean includeValue(Object o) {
+                        return set.contains(o);
+                    }
+                };
+            }
+        };
+    }
+
     private Icon icon;
     private String str;
     private int precedence;
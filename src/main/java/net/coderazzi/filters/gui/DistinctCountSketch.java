@@ -0,0 +1,87 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+/**
+ * Internal class to estimate the number of distinct values in a sequence,
+ * using the HyperLogLog algorithm: each value's hash selects one of 1024
+ * registers, keeping the maximum number of leading zeros seen on the
+ * remaining hash bits.<br>
+ * It requires 1 Kb, independently of the number of values, with a typical
+ * error around 3%.
+ */
+class DistinctCountSketch {
+
+    private static final int PRECISION = 10;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + (1.079 / REGISTERS));
+
+    private byte registers[] = new byte[REGISTERS];
+
+    /** Adds a new value. */
+    public void add(Object value) {
+        long hash = mix((value == null) ? 0 : value.hashCode());
+        int index = (int) (hash >>> (64 - PRECISION));
+        // the bit set at the end limits the rank when the hash bits are 0
+        long rest = (hash << PRECISION) | (1L << (PRECISION - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /** Returns the estimated number of distinct values added. */
+    public double estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : registers) {
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+
+        double ret = (ALPHA * REGISTERS * REGISTERS) / sum;
+        if ((ret <= (2.5 * REGISTERS)) && (zeros > 0)) {
+            // small cardinalities: linear counting
+            ret = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+
+        return ret;
+    }
+
+    /** Spreads the bits of a 32 bits hash code over 64 bits. */
+    private static long mix(int hashCode) {
+        long h = hashCode;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+}
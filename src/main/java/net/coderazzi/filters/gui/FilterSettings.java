@@ -32,6 +32,7 @@ import javax.swing.Icon;
 import javax.swing.ImageIcon;
 
 import net.coderazzi.filters.IParser;
+import net.coderazzi.filters.artifacts.TableModelFilter;
 import net.coderazzi.filters.gui.TableFilterHeader.Position;
 
 
@@ -48,6 +49,20 @@ public class FilterSettings {
     /** If and how to provide content to the editor field's choices. */
     public static AutoChoices autoChoices;
 
+    /**
+     * Maximum number of distinct values in a column for which the AUTO mode
+     * displays all the values as choices, 1000 by default.
+     */
+    public static int autoChoicesMaxDistinct = getInteger(
+            "AutoChoices.MaxDistinct", 1000);
+
+    /**
+     * Percentage of distinct values over the rows in a column from which the
+     * AUTO mode displays no choices, 80 by default.
+     */
+    public static int autoChoicesUniquePercent = getInteger(
+            "AutoChoices.UniquePercent", 80);
+
     /** Whether to enable auto completion, true by default. */
     public static boolean autoCompletion = Boolean.parseBoolean(getString(
                 "AutoCompletion", "true"));
@@ -55,6 +70,15 @@ public class FilterSettings {
     /** Header's background color. */
     public static Color backgroundColor = getColor("BackgroundColor", null);
 
+    /**
+     * Number of threads used to extract the choices from the table model, 1
+     * by default.<br>
+     * If greater than 1, the columns' values are copied on the event dispatch
+     * thread, and then counted in parallel.
+     */
+    public static int choicesExtractionThreads = getInteger(
+            "ChoicesExtraction.Threads", 1);
+
     /**
      * The class defining the generic {@link IParserModel}<br>
      * It must have a default constructor.<br>
@@ -117,6 +141,27 @@ public class FilterSettings {
      */
     public static String matchEmptyFilterString = "=";
 
+    /** The text displayed on the popup while its choices are loaded. */
+    public static String loadingChoicesString = getString(
+            "Popup.LoadingChoices", "loading...");
+
+    /**
+     * The text displayed on the popup, in TOP auto choices mode, when not all
+     * the values are included.
+     */
+    public static String moreChoicesString = getString("Popup.MoreChoices",
+            "more...");
+
+    /**
+     * Whether the popup displays, while typing, only the choices starting
+     * with the typed text, false by default.
+     */
+    public static boolean narrowChoices = Boolean.parseBoolean(getString(
+                "Popup.NarrowChoices", "false"));
+
+    /** The maximum number of filter states kept for undo / redo. */
+    public static int maxFilterStates = getInteger("MaxFilterStates", 20);
+
     /** The maximum size of the history when no choices are present. */
     public static int maxPopupHistory = getInteger("Popup.MaxHistory", 2);
 
@@ -131,6 +176,26 @@ public class FilterSettings {
      */
     public static Class<? extends IParserModel> parserModelClass;
 
+    /**
+     * Whether the editors precompute, while the table is idle, the rows
+     * included by the history entries and the highlighted popup choice, false
+     * by default.
+     */
+    public static boolean precomputeFilters = Boolean.parseBoolean(getString(
+                "PrecomputeFilters", "false"));
+
+    /** The memory, in kilobytes, available to each editor's precomputation. */
+    public static int precomputedFiltersMemory = getInteger(
+            "PrecomputedFiltersMemory", 1024);
+
+    /**
+     * The mapping used by the {@link TableModelFilter} instances created by
+     * the filter header: ARRAYS (default), COMPRESSED, LOW_MEMORY or
+     * STREAMING.
+     */
+    public static TableModelFilter.Mapping rowsMapping =
+        TableModelFilter.Mapping.valueOf(getString("RowsMapping", "ARRAYS"));
+
     /** Header's selection background color. */
     public static Color selectionBackgroundColor = getColor(
             "SelectionBackgroundColor", null);
@@ -142,6 +207,9 @@ public class FilterSettings {
     public static Color selectionForegroundColor = getColor(
             "SelectionForegroundColor", null);
 
+    /** The number of choices displayed in TOP auto choices mode. */
+    public static int topChoices = getInteger("TopChoices", 20);
+
     /** Creates a TextParser as defined by default. */
     public static IParserModel newParserModel() {
         try {
@@ -0,0 +1,293 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.table.TableModel;
+
+import net.coderazzi.filters.IFilter;
+import net.coderazzi.filters.artifacts.RowFilter;
+import net.coderazzi.filters.artifacts.RowSet;
+import net.coderazzi.filters.artifacts.TableModelFilter;
+import net.coderazzi.filters.gui.editor.FilterEditor;
+
+
+/**
+ * Internal class to keep the undo / redo stack of filter states, handled by
+ * the {@link FiltersHandler}.<br>
+ * Each state keeps the content of each {@link FilterEditor}, and the user
+ * filters with their enabled flag. It keeps as well the model rows passing
+ * the filter, as a compressed {@link RowSet}, until the model changes or
+ * the filter is re-applied on an equivalent state, so that restoring the
+ * state does not require filtering the table again; the rows are only
+ * obtained when the state is left.<br>
+ * Consecutive states obtained while the user edits the same editor are
+ * coalesced into one.
+ */
+final class FilterStates {
+
+    private List<State> states = new ArrayList<State>();
+    private int current = -1;
+    private int maxStates = FilterSettings.maxFilterStates;
+    private TableModel model;
+
+    /** Sets the maximum number of states; zero disables the undo support. */
+    public void setMaxStates(int max) {
+        maxStates = Math.max(0, max);
+        while (states.size() > maxStates) {
+            states.remove(0);
+            --current;
+        }
+
+        if ((current < 0) && !states.isEmpty()) {
+            current = 0;
+        }
+    }
+
+    /** Returns the maximum number of states. */
+    public int getMaxStates() {
+        return maxStates;
+    }
+
+    /** Discards all the states. */
+    public void clear() {
+        states.clear();
+        current = -1;
+        model = null;
+    }
+
+    /** Returns true if there is a state to undo to. */
+    public boolean canUndo() {
+        return current > 0;
+    }
+
+    /** Returns true if there is a state to redo to. */
+    public boolean canRedo() {
+        return current < (states.size() - 1);
+    }
+
+    /**
+     * Moves to the previous state, returning it, or null if none.
+     *
+     * @param  filter  the filter model, to obtain the rows of the state left
+     */
+    public State undo(TableModelFilter filter) {
+        if (!canUndo()) {
+            return null;
+        }
+
+        keepRows(states.get(current), filter);
+
+        return states.get(--current);
+    }
+
+    /**
+     * Moves to the next state, returning it, or null if none.
+     *
+     * @param  filter  the filter model, to obtain the rows of the state left
+     */
+    public State redo(TableModelFilter filter) {
+        if (!canRedo()) {
+            return null;
+        }
+
+        keepRows(states.get(current), filter);
+
+        return states.get(++current);
+    }
+
+    /**
+     * Records a new state, discarding any state that could be redone. It must
+     * be invoked before the filter model applies the new state.
+     *
+     * @param  state    the new state
+     * @param  editing  the editor being edited, if any
+     * @param  filter   the filter model, to obtain the rows of the state left
+     */
+    public void record(State state, FilterEditor editing,
+                       TableModelFilter filter) {
+        if (maxStates == 0) {
+            return;
+        }
+
+        State last = (current < 0) ? null : states.get(current);
+        if ((last != null) && last.isEquivalent(state, null)) {
+            // the state is not left, but the filter is re-applied: the
+            // parser or some user filter could have changed the outcome
+            invalidateRows();
+        } else if ((last != null) && (editing != null)
+                && (last.editing == editing)
+                && last.isEquivalent(state, editing.getModelIndex())) {
+            state.editing = editing;
+            states.set(current, state);
+        } else {
+            if (last != null) {
+                keepRows(last, filter);
+            }
+
+            state.editing = editing;
+            states.subList(current + 1, states.size()).clear();
+            states.add(state);
+            if (states.size() > maxStates) {
+                states.remove(0);
+            } else {
+                ++current;
+            }
+        }
+    }
+
+    /**
+     * Sets on the state being left the rows currently passing the filter
+     * model, which can be null, unless they are already known.
+     */
+    private void keepRows(State state, TableModelFilter filter) {
+        if ((filter != null) && (filter.getModel() != model)) {
+            invalidateRows();
+            model = filter.getModel();
+        }
+
+        if ((filter != null) && (state.rows == null)) {
+            state.rows = filter.getVisibleRows();
+        }
+    }
+
+    /**
+     * Returns a filter that, while active, uses the rows passing the given
+     * state, instead of evaluating the delegate filter.
+     */
+    public RestoredFilter createRestoredFilter(RowFilter delegate,
+                                               State     state) {
+        return new RestoredFilter(delegate, state.rows, model);
+    }
+
+    /**
+     * Discards the rows kept by the states, invoked when the tracked model
+     * changes, or when the filtering outcome could differ.
+     */
+    public void invalidateRows() {
+        for (State state : states) {
+            state.rows = null;
+        }
+    }
+
+    /** A filter state. */
+    static final class State {
+        /** The content of each editor, by model index. */
+        Map<Integer, Object> contents = new HashMap<Integer, Object>();
+        /** The model index of the disabled editors. */
+        Set<Integer> disabledEditors = new HashSet<Integer>();
+        /** The user filters, with their enabled flag. */
+        Map<IFilter, Boolean> filters = new HashMap<IFilter, Boolean>();
+        /** The editor being edited when the state was recorded. */
+        FilterEditor editing;
+        /** The model rows passing the filter, null if not known. */
+        RowSet rows;
+
+        /**
+         * Returns true if both states are equal, except, perhaps, on the
+         * content of the editor at the given model index.
+         */
+        boolean isEquivalent(State state, Integer except) {
+            if (!filters.equals(state.filters)
+                    || !disabledEditors.equals(state.disabledEditors)
+                    || !contents.keySet().equals(state.contents.keySet())) {
+                return false;
+            }
+
+            for (Map.Entry<Integer, Object> entry : contents.entrySet()) {
+                Integer key = entry.getKey();
+                if (!key.equals(except)) {
+                    Object content = entry.getValue();
+                    Object other = state.contents.get(key);
+                    if ((content == null) ? (other != null)
+                                          : !content.equals(other)) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Filter used when a state is restored: while active, and if the state
+     * rows are still valid, it sets them directly, without evaluating the
+     * delegate filter.
+     */
+    static final class RestoredFilter extends RowFilter {
+        private RowFilter delegate;
+        private RowSet rows;
+        private TableModel model;
+        boolean active = true;
+
+        RestoredFilter(RowFilter delegate, RowSet rows, TableModel model) {
+            this.delegate = delegate;
+            this.rows = rows;
+            this.model = model;
+        }
+
+        @Override public boolean include(RowFilter.Entry entry) {
+            return delegate.include(entry);
+        }
+
+        @Override protected void includeRange(RowFilter.BatchEntry entry,
+                                              int from, int to,
+                                              BitSet result) {
+            if (isUsable(entry)) {
+                rows.copyTo(result, from, to);
+            } else {
+                delegate.include(entry, from, to, result);
+            }
+        }
+
+        @Override protected void includeRows(RowFilter.BatchEntry entry,
+                                             int rows[], int count,
+                                             BitSet result) {
+            if (isUsable(entry)) {
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (this.rows.contains(row)) {
+                        result.set(row);
+                    }
+                }
+            } else {
+                delegate.include(entry, rows, count, result);
+            }
+        }
+
+        private boolean isUsable(RowFilter.Entry entry) {
+            return active && (rows != null) && (entry.getModel() == model);
+        }
+    }
+}
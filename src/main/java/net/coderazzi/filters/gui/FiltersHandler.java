@@ -30,9 +30,13 @@ import java.beans.PropertyChangeListener;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.JTable;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
 import javax.swing.table.TableModel;
 
 import net.coderazzi.filters.AndFilter;
@@ -80,6 +84,12 @@ public class FiltersHandler extends AndFilter
      */
     private boolean pendingNotifications;
 
+    /**
+     * Set if the choices handler has been interrupted since notifications
+     * were disabled.
+     */
+    private boolean choicesInterrupted;
+
     /** The autoChoices mode.*/
     private AutoChoices autoChoices;
 
@@ -91,7 +101,7 @@ public class FiltersHandler extends AndFilter
     private JTable table;
 
     /** Instance to handle choices (choices) on each FilterEditor. */
-    private ChoicesHandler choicesHandler = new NonAdaptiveChoicesHandler(this);
+    private ChoicesHandler choicesHandler;
 
     /** The associated filter model. */
     private IParserModel parserModel;
@@ -99,10 +109,44 @@ public class FiltersHandler extends AndFilter
     /** The associated filter model. */
     private Filter applyingFilter;
 
+    /** The undo / redo stack of filter states. */
+    private FilterStates filterStates = new FilterStates();
+
+    /** The filter state being restored, if any. */
+    private FilterStates.State restoringState;
+
+    /** Nesting level of the bulk updates in progress. */
+    private int updates;
+
+    /** The choices handler on the current bulk update. */
+    private ChoicesHandler updatingChoices;
+
+    /** The model filter on the current bulk update, if any. */
+    private TableModelFilter updatingFilter;
+
+    /** The model filter whose model changes are reported to the editors. */
+    private TableModelFilter trackedFilter;
+
+    /**
+     * Listener reporting the model changes to the editors, to the choices
+     * handler and to the filter states, before the model filter handles them.
+     */
+    private TableModelListener trackingListener = new TableModelListener() {
+        public void tableChanged(TableModelEvent e) {
+            for (FilterEditor editor : editors.values()) {
+                editor.modelChanged(e);
+            }
+
+            choicesHandler.trackedModelChanged(e);
+            filterStates.invalidateRows();
+        }
+    };
+
     /** Only constructor. */
     FiltersHandler(AutoChoices mode, IParserModel parserModel) {
     	
     	autoChoices = mode;
+    	choicesHandler = createChoicesHandler(mode);
     	// create an observer instance to notify the associated table when there
         // are filter changes.
         addFilterObserver(new IFilterObserver() {
@@ -118,6 +162,8 @@ public class FiltersHandler extends AndFilter
      */
     public void setTable(JTable table) {
         choicesHandler.setInterrupted(true);
+        filterStates.clear();
+        setTrackedFilter(null);
         if (this.table != null) {
             TableModel tm = this.table.getModel();
             if (tm instanceof ITableModelFilter) {
@@ -133,6 +179,14 @@ public class FiltersHandler extends AndFilter
         return table;
     }
 
+    /**
+     * Returns the model whose changes are reported to the editors' parsers,
+     * before the table filter handles them, or null if none.
+     */
+    public TableModel getTrackedModel() {
+        return (trackedFilter == null) ? null : trackedFilter.getModel();
+    }
+
     /** Sets the {@link IParserModel} instance. */
     public void setParserModel(IParserModel parserModel) {
         if ((parserModel != null) && (parserModel != this.parserModel)) {
@@ -142,6 +196,7 @@ public class FiltersHandler extends AndFilter
 
             this.parserModel = parserModel;
             this.parserModel.addPropertyChangeListener(this);
+            filterStates.invalidateRows();
             enableNotifications(false);
             for (FilterEditor editor : editors.values()) {
                 editor.resetFilter();
@@ -185,6 +240,8 @@ public class FiltersHandler extends AndFilter
             }
         }
 
+        // the rows kept by the filter states depend on the parser settings
+        filterStates.invalidateRows();
         enableNotifications(false);
         for (FilterEditor editor : editors.values()) {
             if (target == null) {
@@ -211,6 +268,12 @@ public class FiltersHandler extends AndFilter
     public void setAutoChoices(AutoChoices mode) {
         if (mode != autoChoices) {
             enableNotifications(false);
+            if ((mode == AutoChoices.ADAPTIVE)
+                    != (autoChoices == AutoChoices.ADAPTIVE)) {
+                // the current handler is already interrupted
+                choicesHandler = createChoicesHandler(mode);
+            }
+
             this.autoChoices = mode;
             for (FilterEditor editor : editors.values()) {
                 // after this call, the editor will request its choices
@@ -303,7 +366,97 @@ public class FiltersHandler extends AndFilter
         if (table != null) {
             TableModel model = table.getModel();
             if (model != null) {
-                getRowFilter(model).setRowFilter(isEnabled() ? this : null);
+                // the model filter must be created before requesting the
+                // choices handler's filter
+                ITableModelFilter modelFilter = getRowFilter(model);
+                RowFilter rowFilter = isEnabled()
+                    ? choicesHandler.getRowFilter() : null;
+                TableModelFilter filterModel =
+                    (modelFilter instanceof TableModelFilter)
+                    ? (TableModelFilter) modelFilter : null;
+                if (restoringState == null) {
+                    if (filterStates.getMaxStates() > 0) {
+                        // recorded before the state left is filtered out
+                        filterStates.record(createFilterState(),
+                            getEditingEditor(), filterModel);
+                    }
+
+                    modelFilter.setRowFilter(rowFilter);
+                } else if (rowFilter == null) {
+                    modelFilter.setRowFilter(null);
+                } else {
+                    // the restored filter is only used to apply the rows
+                    // kept by the state; it just delegates afterwards
+                    FilterStates.RestoredFilter restored =
+                        filterStates.createRestoredFilter(rowFilter,
+                            restoringState);
+                    modelFilter.setRowFilter(restored);
+                    restored.active = false;
+                }
+            }
+        }
+    }
+
+    /** Sets the maximum number of filter states kept for undo / redo. */
+    public void setMaxFilterStates(int max) {
+        filterStates.setMaxStates(max);
+    }
+
+    /** Returns the maximum number of filter states kept for undo / redo. */
+    public int getMaxFilterStates() {
+        return filterStates.getMaxStates();
+    }
+
+    /** Returns true if there is a previous filter state to restore. */
+    public boolean canUndoFilterState() {
+        return filterStates.canUndo();
+    }
+
+    /** Returns true if there is a next filter state to restore. */
+    public boolean canRedoFilterState() {
+        return filterStates.canRedo();
+    }
+
+    /** Restores the previous filter state, returning false if none. */
+    public boolean undoFilterState() {
+        return restoreFilterState(filterStates.undo(trackedFilter));
+    }
+
+    /** Restores the next filter state, returning false if none. */
+    public boolean redoFilterState() {
+        return restoreFilterState(filterStates.redo(trackedFilter));
+    }
+
+    /** Starts a bulk update on the table model, see endUpdate. */
+    public void beginUpdate() {
+        if ((updates++ == 0) && (table != null)) {
+            TableModel model = table.getModel();
+            updatingFilter = (model instanceof TableModelFilter)
+                ? (TableModelFilter) model : null;
+            if (updatingFilter != null) {
+                updatingFilter.beginUpdate();
+            }
+
+            updatingChoices = choicesHandler;
+            updatingChoices.beginUpdate();
+        }
+    }
+
+    /**
+     * Ends a bulk update, updating once the choices and the filtered rows.
+     */
+    public void endUpdate() {
+        if ((updates > 0) && (--updates == 0)) {
+            // the choices handler receives first the events, as it could
+            // provide the filter used by the model filter
+            if (updatingChoices != null) {
+                updatingChoices.endUpdate();
+                updatingChoices = null;
+            }
+
+            if (updatingFilter != null) {
+                updatingFilter.endUpdate();
+                updatingFilter = null;
             }
         }
     }
@@ -328,6 +481,15 @@ public class FiltersHandler extends AndFilter
      * is reached.</p>
      */
     public void enableNotifications(boolean enable) {
+        enableNotifications(enable, true);
+    }
+
+    /**
+     * Enables / disables notifications, as {@link
+     * #enableNotifications(boolean)}; the choices handler is only interrupted
+     * -and its information recreated afterwards- if so specified.
+     */
+    private void enableNotifications(boolean enable, boolean interrupt) {
         sendNotifications += enable ? 1 : -1;
         if (enable) {
             if (sendNotifications == 0) {
@@ -340,13 +502,16 @@ public class FiltersHandler extends AndFilter
                 // the whole model is setup. We use the same mechanism whenever
                 // it would be needed to recreate the adaptive support or
                 // because it could be more efficient doing so.
-                if (choicesHandler.setInterrupted(false)
+                boolean interrupted = choicesInterrupted;
+                choicesInterrupted = false;
+                if ((interrupted && choicesHandler.setInterrupted(false))
                         || pendingNotifications) {
                     updateTableFilter();
                 }
             }
-        } else if (choicesHandler.setInterrupted(true)) {
-            // updateTableFilter();
+        } else if (interrupt) {
+            choicesInterrupted = true;
+            choicesHandler.setInterrupted(true);
         }
     }
 
@@ -363,19 +528,138 @@ public class FiltersHandler extends AndFilter
     }
 
 
+    /**
+     * Restores the given filter state, if not null. The table is updated only
+     * once, using the rows kept by the state if the model has not changed.
+     */
+    private boolean restoreFilterState(FilterStates.State state) {
+        if (state == null) {
+            return false;
+        }
+
+        // unless the user filters change, which implies anyway recreating
+        // the choices information, the choices handler is not interrupted,
+        // as it would recreate it
+        Set<IFilter> userFilters = getUserFilters();
+        boolean filtersChange = !userFilters.equals(state.filters.keySet());
+        enableNotifications(false, filtersChange);
+
+        restoringState = state;
+        for (IFilter filter : userFilters) {
+            if (!state.filters.containsKey(filter)) {
+                removeFilter(filter);
+            }
+        }
+
+        for (Map.Entry<IFilter, Boolean> entry : state.filters.entrySet()) {
+            IFilter filter = entry.getKey();
+            if (!userFilters.contains(filter)) {
+                addFilter(filter);
+            }
+
+            filter.setEnabled(entry.getValue());
+        }
+
+        for (FilterEditor editor : editors.values()) {
+            Integer index = editor.getModelIndex();
+            if (state.contents.containsKey(index)) {
+                editor.setContent(state.contents.get(index));
+                editor.getFilter().setEnabled(
+                    !state.disabledEditors.contains(index));
+            }
+        }
+
+        enableNotifications(true, filtersChange);
+
+        restoringState = null;
+
+        return true;
+    }
+
+    /** Creates a filter state with the current editors and user filters. */
+    private FilterStates.State createFilterState() {
+        FilterStates.State ret = new FilterStates.State();
+        for (FilterEditor editor : editors.values()) {
+            Integer index = editor.getModelIndex();
+            ret.contents.put(index, editor.getContent());
+            if (!editor.getFilter().isEnabled()) {
+                ret.disabledEditors.add(index);
+            }
+        }
+
+        for (IFilter filter : getUserFilters()) {
+            ret.filters.put(filter, filter.isEnabled());
+        }
+
+        return ret;
+    }
+
+    /** Returns the filters not associated to any editor. */
+    private Set<IFilter> getUserFilters() {
+        Set<IFilter> ret = new HashSet<IFilter>(filters);
+        for (FilterEditor editor : editors.values()) {
+            ret.remove(editor.getFilter());
+        }
+
+        return ret;
+    }
+
+    /** Returns the editor being edited, if any. */
+    private FilterEditor getEditingEditor() {
+        for (FilterEditor editor : editors.values()) {
+            if (editor.isEditing()) {
+                return editor;
+            }
+        }
+
+        return null;
+    }
+
+    /** Creates the {@link ChoicesHandler} for the given auto choices mode. */
+    private ChoicesHandler createChoicesHandler(AutoChoices mode) {
+        return (mode == AutoChoices.ADAPTIVE)
+            ? new AdaptiveChoicesHandler(this)
+            : new NonAdaptiveChoicesHandler(this);
+    }
+
     /**
      * Returns the row filter associated to the current table, creating a
      * default one if none.
      */
     private ITableModelFilter getRowFilter(TableModel tableModel) {
         if (tableModel instanceof ITableModelFilter) {
+            setTrackedFilter((TableModelFilter) tableModel);
+
             return (TableModelFilter) tableModel;
         }
 
         TableModelFilter modelFilter = new TableModelFilter(tableModel);
+        modelFilter.setMapping(FilterSettings.rowsMapping);
         table.setModel(modelFilter);
+        setTrackedFilter(modelFilter);
 
         return modelFilter;
     }
 
+    /** Sets the model filter whose model changes are reported to editors. */
+    private void setTrackedFilter(TableModelFilter filter) {
+        if (filter != trackedFilter) {
+            if (trackedFilter != null) {
+                trackedFilter.removeModelListener(trackingListener);
+            }
+
+            trackedFilter = filter;
+            if (filter != null) {
+                filter.addModelListener(trackingListener);
+            }
+
+            TableModel model = getTrackedModel();
+            for (FilterEditor editor : editors.values()) {
+                editor.setTrackedModel(model);
+            }
+
+            choicesHandler.updateListening();
+        }
+    }
+
 }
@@ -26,15 +26,33 @@
 package net.coderazzi.filters.gui;
 
 import java.awt.Component;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.swing.JLabel;
 
 /**
- * Class to render properly columns having html content.
+ * Class to render properly columns having html content.<br>
+ * Parsing the html is expensive, so the labels rendered for the most recently
+ * displayed values are kept, each one already holding its parsed html. The
+ * labels copy the alignment and border of this renderer.
  */
 public class HtmlChoiceRenderer extends JLabel implements ChoiceRenderer {
 
 	private static final long serialVersionUID = -825539410560961416L;
+
+	/** Number of labels kept, enough to display several popups' rows. */
+	private static final int CACHED_LABELS = 256;
+
+	private Map<String, JLabel> labels = new LinkedHashMap<String, JLabel>(
+			CACHED_LABELS, 0.75f, true) {
+		private static final long serialVersionUID = 2893071536208469511L;
+
+		@Override protected boolean removeEldestEntry(
+				Map.Entry<String, JLabel> eldest) {
+			return size() > CACHED_LABELS;
+		}
+	};
 	
 	public HtmlChoiceRenderer() {
 		setOpaque(true);
@@ -42,9 +60,18 @@ public class HtmlChoiceRenderer extends JLabel implements ChoiceRenderer {
 	
 	public Component getRendererComponent(IFilterEditor editor, Object value,
 			boolean isSelected) {
-		setText(value==null? "" : value.toString());
-		editor.getLook().setupComponent(this, isSelected, 
+		String text = value==null? "" : value.toString();
+		JLabel label = labels.get(text);
+		if (label == null) {
+			label = new JLabel();
+			label.setOpaque(true);
+			label.setHorizontalAlignment(getHorizontalAlignment());
+			label.setBorder(getBorder());
+			label.setText(text);
+			labels.put(text, label);
+		}
+		editor.getLook().setupComponent(label, isSelected, 
 				editor.getFilter().isEnabled());
-		return this;
+		return label;
 	}
 }
@@ -25,32 +25,64 @@
 
 package net.coderazzi.filters.gui;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
 import javax.swing.event.TableModelEvent;
 import javax.swing.table.TableModel;
 
 import net.coderazzi.filters.IFilter;
 import net.coderazzi.filters.artifacts.RowFilter;
 import net.coderazzi.filters.gui.editor.FilterEditor;
+import net.coderazzi.filters.gui.editor.IChoicesPreparer;
 
 
 /**
  * Internal class to handle choices without adaptive behaviour<br>
- * Choices are automatically updated as the table model changes.
+ * Choices are automatically updated as the table model changes: for each
+ * editor, a {@link ChoicesCounter} keeps the number of rows holding each value,
+ * so deleted or updated rows remove the choices no longer in the model.<br>
+ * Editors in LAZY mode get a {@link ChoicesLoader}, which reads the model's
+ * values only when the choices are first required, in background.
  */
 class NonAdaptiveChoicesHandler extends ChoicesHandler {
 
+    // models up to this size are directly read by a ChoicesLoader
+    private static final int DIRECT_LOAD_ROWS = 16384;
+    // number of choices on the first batch sent by a ChoicesLoader
+    private static final int FIRST_LOAD_BATCH = 256;
+    private static Executor loadExecutor;
+    private static ExecutorService extractionExecutor;
+
     private boolean interrupted = true;
     // it is needed to map the filters to its editors
     private Map<IFilter, FilterEditor> filtersMap =
         new HashMap<IFilter, FilterEditor>();
     // entry used to filter rows
     private RowEntry rowEntry;
+    // counters for the editors whose choices are extracted from the model
+    private Map<FilterEditor, ChoicesCounter> counters =
+        new HashMap<FilterEditor, ChoicesCounter>();
+    // counters for the editors in TOP mode
+    private Map<FilterEditor, TopChoicesCounter> tops =
+        new HashMap<FilterEditor, TopChoicesCounter>();
+    // loaders currently extracting the choices of LAZY editors
+    private Map<FilterEditor, ChoicesLoader> loaders =
+        new HashMap<FilterEditor, ChoicesLoader>();
 
     public NonAdaptiveChoicesHandler(FiltersHandler handler) {
         super(handler);
@@ -64,10 +96,9 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
         if (this.interrupted != interrupted) {
             this.interrupted = interrupted;
             setEnableTableModelEvents(!interrupted);
+            discardAll();
             if (!interrupted) {
-                for (FilterEditor editor : handler.getEditors()) {
-                    editorUpdated(editor);
-                }
+                initEditorsChoices(handler.getEditors());
 
                 initialiseFiltersInfo();
             }
@@ -79,6 +110,8 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
     @Override public void editorUpdated(FilterEditor editor) {
         if (editor.isEnabled()) {
             initEditorChoices(editor);
+        } else {
+            discard(editor);
         }
     }
 
@@ -129,6 +162,7 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
 
     @Override public void allFiltersDisabled() {
         setEnableTableModelEvents(false);
+        discardAll();
     }
 
     @Override public void tableUpdated(TableModel model,
@@ -136,44 +170,216 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
                                        int        firstRow,
                                        int        lastRow,
                                        int        column) {
+        if (lastRow < firstRow) {
+            return;
+        }
+
+        for (ChoicesLoader loader
+                : new ArrayList<ChoicesLoader>(loaders.values())) {
+            loader.tableUpdated(model, eventType, firstRow, lastRow, column);
+        }
+
         if (column != TableModelEvent.ALL_COLUMNS) {
             // a change in ONE column is always handled as an update
-            // (every update is handled by re-extracting the choices
             FilterEditor editor = handler.getEditor(column);
-            if ((editor != null) && editor.isEnabled()) {
-                editor.addChoices(modelExtract(editor, model, firstRow, lastRow,
-                        new HashSet<Object>()));
+            ChoicesCounter counter = (editor == null) ? null
+                                                      : counters.get(editor);
+            if (counter != null) {
+                updateCounter(counter, model, TableModelEvent.UPDATE, firstRow,
+                    lastRow);
+            }
+
+            TopChoicesCounter top = (editor == null) ? null : tops.get(editor);
+            if (top != null) {
+                updateTopCounter(top, model, TableModelEvent.UPDATE, firstRow,
+                    lastRow);
             }
         } else {
-            for (FilterEditor editor : handler.getEditors()) {
-                if (editor.isEnabled()
-                        && (AutoChoices.ENABLED == editor.getAutoChoices())) {
-                    // insert events can be handled by adding the
-                    // new model's values.
-                    // Choices are not removed ever (when rows are
-                    // filtered out, they are temporarily deleted!),
-                    // so deletes are not handled, and updates are
-                    // treated as inserts
-                    if (eventType != TableModelEvent.DELETE) {
-                        editor.addChoices(modelExtract(editor, model, firstRow,
-                                lastRow, new HashSet<Object>()));
-                    }
-                }
+            // the counters can be recreated during the update
+            for (ChoicesCounter counter
+                    : new ArrayList<ChoicesCounter>(counters.values())) {
+                updateCounter(counter, model, eventType, firstRow, lastRow);
+            }
+
+            for (TopChoicesCounter top
+                    : new ArrayList<TopChoicesCounter>(tops.values())) {
+                updateTopCounter(top, model, eventType, firstRow, lastRow);
             }
         }
     }
 
     /**
-     * Initializes the choices in the given editor.<br>
-     * It can update the mode of the editor, from ENABLED to ENUMS (in case of
-     * enumerations), and from ENUMS to DISABLED (for no enumerations)
+     * Updates the TOP counter with the given table event, as {@link
+     * #updateCounter(ChoicesCounter, TableModel, int, int, int)}.
      */
+    private void updateTopCounter(TopChoicesCounter counter,
+                                  TableModel        model,
+                                  int               eventType,
+                                  int               firstRow,
+                                  int               lastRow) {
+        int count = lastRow - firstRow + 1;
+        int rows = model.getRowCount();
+        switch (eventType) {
+
+        case TableModelEvent.INSERT:
+
+            if ((firstRow > counter.rows) || ((counter.rows + count) != rows)) {
+                initEditorChoices(counter.editor);
+
+                return;
+            }
+
+            counter.insertRows(model, firstRow, lastRow);
+
+            break;
+
+        case TableModelEvent.DELETE:
+
+            // after a bulk update, the model can hold already inserted rows
+            if ((lastRow >= counter.rows) || ((counter.rows - count) > rows)) {
+                initEditorChoices(counter.editor);
+
+                return;
+            }
+
+            counter.deleteRows(firstRow, lastRow);
+
+            break;
+
+        default:
+
+            if ((lastRow >= counter.rows) || (counter.rows != rows)) {
+                initEditorChoices(counter.editor);
+
+                return;
+            }
+
+            counter.updateRows(model, firstRow, lastRow);
+
+            break;
+        }
+
+        setTopChoices(counter);
+    }
+
+    /**
+     * Updates the counter with the given table event, sending the choices that
+     * appear or disappear to its editor. If the event does not match the
+     * rows known by the counter, the editor's choices are fully recreated.
+     */
+    private void updateCounter(ChoicesCounter counter,
+                               TableModel     model,
+                               int            eventType,
+                               int            firstRow,
+                               int            lastRow) {
+        int count = lastRow - firstRow + 1;
+        int rows = model.getRowCount();
+        switch (eventType) {
+
+        case TableModelEvent.INSERT:
+
+            if ((firstRow > counter.rows) || ((counter.rows + count) != rows)) {
+                initEditorChoices(counter.editor);
+
+                return;
+            }
+
+            counter.insertRows(firstRow, count);
+            for (int row = firstRow; row <= lastRow; row++) {
+                counter.setValue(model, row);
+                counter.count(row, 1);
+            }
+
+            break;
+
+        case TableModelEvent.DELETE:
+
+            // after a bulk update, the model can hold already inserted rows
+            if ((lastRow >= counter.rows) || ((counter.rows - count) > rows)) {
+                initEditorChoices(counter.editor);
+
+                return;
+            }
+
+            for (int row = firstRow; row <= lastRow; row++) {
+                counter.count(row, -1);
+            }
+
+            counter.deleteRows(firstRow, count);
+
+            break;
+
+        default:
+
+            if ((lastRow >= counter.rows) || (counter.rows != rows)) {
+                initEditorChoices(counter.editor);
+
+                return;
+            }
+
+            for (int row = firstRow; row <= lastRow; row++) {
+                counter.count(row, -1);
+                counter.setValue(model, row);
+                counter.count(row, 1);
+            }
+
+            break;
+        }
+
+        counter.flushChoices();
+    }
+
+    /** Initializes the choices in the given editor. */
     private void initEditorChoices(FilterEditor editor) {
+        initEditorsChoices(Collections.singletonList(editor));
+    }
+
+    /**
+     * Initializes the choices in the given editors, ignoring those disabled.
+     * <br>
+     * The editors requiring the model's values are all extracted together.
+     */
+    private void initEditorsChoices(Collection<FilterEditor> editors) {
+        JTable table = handler.getTable();
+        if (table == null) {
+            return;
+        }
+
+        List<ChoicesCounter> extract = new ArrayList<ChoicesCounter>();
+        TableModel model = getEventsModel(table);
+        for (FilterEditor editor : editors) {
+            if (editor.isEnabled() && prepareEditorChoices(editor, model)) {
+                ChoicesCounter counter = new ChoicesCounter(editor, model);
+                counter.rows = model.getRowCount();
+                counters.put(editor, counter);
+                extract.add(counter);
+            }
+        }
+
+        if (!extract.isEmpty()) {
+            extractValues(model, extract);
+            for (ChoicesCounter counter : extract) {
+                counter.editor.setChoices(counter.fillChoices(
+                        counter.editor.getCustomChoices()));
+            }
+        }
+    }
+
+    /**
+     * Sets the choices in the given editor that do not depend on the model's
+     * values, returning true if the model's values are required.<br>
+     * It can update the mode of the editor, from ENABLED to ENUMS (in case of
+     * enumerations), and from ENUMS to DISABLED (for no enumerations); the
+     * AUTO mode is resolved on each call, without updating the editor.
+     */
+    private boolean prepareEditorChoices(FilterEditor editor,
+                                         TableModel   model) {
+        discard(editor);
+
         AutoChoices autoChoices = editor.getAutoChoices();
         if (autoChoices == AutoChoices.DISABLED) {
             editor.setChoices(editor.getCustomChoices());
         } else {
-            TableModel model = handler.getTable().getModel();
             Class<?> c = model.getColumnClass(editor.getModelIndex());
             boolean asEnum = c.equals(Boolean.class) || c.isEnum();
             if (asEnum && (autoChoices != AutoChoices.ENUMS)) {
@@ -193,32 +399,176 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
 
                 editor.setChoices(choices);
             } else {
-                setChoicesFromModel(editor, model);
+                if (autoChoices == AutoChoices.AUTO) {
+                    autoChoices = resolveAutoChoices(model,
+                            editor.getModelIndex());
+                }
+
+                return prepareModelChoices(editor, model, autoChoices);
             }
         }
+
+        return false;
+    }
+
+    /**
+     * Sets the choices in the given editor, for a mode requiring the model's
+     * values, returning true if they must be extracted by the caller.
+     */
+    private boolean prepareModelChoices(FilterEditor editor,
+                                        TableModel   model,
+                                        AutoChoices  autoChoices) {
+        if (autoChoices == AutoChoices.DISABLED) {
+            editor.setChoices(editor.getCustomChoices());
+        } else if (autoChoices == AutoChoices.TOP) {
+            TopChoicesCounter counter = new TopChoicesCounter(editor,
+                    FilterSettings.topChoices);
+            counter.readAll(model);
+            tops.put(editor, counter);
+            setTopChoices(counter);
+        } else if (autoChoices == AutoChoices.LAZY) {
+            editor.setChoices(editor.getCustomChoices());
+            editor.setChoicesLoader(new ChoicesLoader(editor));
+        } else {
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Sets the choices for an editor in TOP mode; if the most frequent values
+     * have not changed, only their counts are updated.
+     */
+    private void setTopChoices(TopChoicesCounter counter) {
+        FilterEditor editor = counter.editor;
+        Map<Object, Integer> values = counter.getTopValues();
+        if (!values.keySet().equals(counter.published)) {
+            Set choices = editor.getCustomChoices();
+            choices.addAll(values.keySet());
+            editor.setChoices(choices);
+            counter.published = values.keySet();
+        }
+
+        editor.setChoicesFrequencies(values);
+        editor.setMoreChoices(counter.hasMoreValues());
+    }
+
+    /** Discards any choices' information for the given editor. */
+    private void discard(FilterEditor editor) {
+        counters.remove(editor);
+        if (tops.remove(editor) != null) {
+            editor.setMoreChoices(false);
+        }
+
+        editor.setChoicesLoader(null);
+
+        ChoicesLoader loader = loaders.remove(editor);
+        if (loader != null) {
+            loader.cancel();
+        }
     }
 
-    /** Sets the content for the given editor from the model's values. */
-    private void setChoicesFromModel(FilterEditor editor, TableModel model) {
-        editor.setChoices(modelExtract(editor, model, 0,
-                model.getRowCount() - 1, editor.getCustomChoices()));
+    /** Discards the choices' information for all the editors. */
+    private void discardAll() {
+        counters.clear();
+        for (FilterEditor editor : tops.keySet()) {
+            editor.setMoreChoices(false);
+        }
+
+        tops.clear();
+        for (ChoicesLoader loader
+                : new ArrayList<ChoicesLoader>(loaders.values())) {
+            loader.cancel();
+        }
+
+        for (FilterEditor editor : handler.getEditors()) {
+            discard(editor);
+        }
     }
 
     /**
-     * Extract content from the given range of rows in the model, adding the
-     * results to the provided Set, which is then returned.
+     * Reads the model's values for the given counters, in a single pass over
+     * the rows. If so specified by {@link
+     * FilterSettings#choicesExtractionThreads}, the columns' values are
+     * copied instead, and then counted in parallel: the model is only read
+     * from the calling thread.
      */
-    private Set modelExtract(FilterEditor editor,
-                             TableModel   model,
-                             int          firstRow,
-                             int          lastRow,
-                             Set          fill) {
-        int column = editor.getModelIndex();
-        for (; lastRow >= firstRow; firstRow++) {
-            fill.add(model.getValueAt(firstRow, column));
+    private void extractValues(TableModel           model,
+                               List<ChoicesCounter> extract) {
+        int threads = Math.min(FilterSettings.choicesExtractionThreads,
+                extract.size());
+        if (threads > 1) {
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+            for (int i = 0; i < threads; i++) {
+                final List<ChoicesCounter> part =
+                    new ArrayList<ChoicesCounter>();
+                for (int j = i; j < extract.size(); j += threads) {
+                    ChoicesCounter counter = extract.get(j);
+                    counter.readSnapshot(model);
+                    part.add(counter);
+                }
+
+                tasks.add(new Callable<Object>() {
+                        public Object call() {
+                            for (ChoicesCounter counter : part) {
+                                counter.countSnapshot();
+                            }
+
+                            return null;
+                        }
+                    });
+            }
+
+            boolean done = false;
+            try {
+                for (Future<Object> future
+                        : getExtractionExecutor().invokeAll(tasks)) {
+                    future.get();
+                }
+
+                done = true;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+
+                throw new RuntimeException(cause);
+            } finally {
+                for (ChoicesCounter counter : extract) {
+                    counter.releaseSnapshot();
+                }
+            }
+
+            if (done) {
+                return;
+            }
+
+            // interrupted: read the values in this thread
+            for (ChoicesCounter counter : extract) {
+                counter.reset();
+            }
         }
 
-        return fill;
+        extractValues(model, extract, 0, model.getRowCount());
+    }
+
+    /** Reads the model's values on the given rows, for all the counters. */
+    private static void extractValues(TableModel           model,
+                                      List<ChoicesCounter> extract,
+                                      int                  from,
+                                      int                  to) {
+        int size = extract.size();
+        ChoicesCounter use[] = extract.toArray(new ChoicesCounter[size]);
+        for (int row = from; row < to; row++) {
+            for (int i = 0; i < size; i++) {
+                use[i].setValue(model, row);
+                use[i].count(row, 1);
+            }
+        }
     }
 
     /** Initialise structures related to the filters and editors. */
@@ -237,4 +587,269 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
         }
     }
 
+    /** Returns the executor counting the copied values in parallel. */
+    private static synchronized ExecutorService getExtractionExecutor() {
+        if (extractionExecutor == null) {
+            extractionExecutor = Executors.newCachedThreadPool(
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread ret = new Thread(r,
+                                    "TableFilter extraction");
+                            ret.setDaemon(true);
+
+                            return ret;
+                        }
+                    });
+        }
+
+        return extractionExecutor;
+    }
+
+    /** Returns the executor running the background loads. */
+    private static synchronized Executor getLoadExecutor() {
+        if (loadExecutor == null) {
+            loadExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread ret = new Thread(r, "TableFilter choices");
+                            ret.setDaemon(true);
+                            ret.setPriority(Thread.MIN_PRIORITY);
+
+                            return ret;
+                        }
+                    });
+        }
+
+        return loadExecutor;
+    }
+
+    /**
+     * Loader of the choices for an editor in LAZY mode.<br>
+     * Small models are read directly. Otherwise, the column's values are
+     * copied on the event dispatch thread, and then counted and converted into
+     * choices on a background thread, which sends them to the editor in
+     * batches of growing size; the popup shows meanwhile a loading row.<br>
+     * Rows appended at the end or removed from the front during the load are
+     * applied once the copied values are counted; any other change on the
+     * column restarts the load, discarding the background work.
+     */
+    class ChoicesLoader implements Runnable {
+        private FilterEditor editor;
+        private Extraction current;
+        private boolean restartPending;
+        private boolean cancelled;
+
+        ChoicesLoader(FilterEditor editor) {
+            this.editor = editor;
+        }
+
+        /** Starts the load, invoked the first time that choices are needed. */
+        public void run() {
+            if (!cancelled && !interrupted) {
+                loaders.put(editor, this);
+                start();
+            }
+        }
+
+        /** Handles a model change while the load is in progress. */
+        void tableUpdated(TableModel model,
+                          int        eventType,
+                          int        firstRow,
+                          int        lastRow,
+                          int        column) {
+            if ((column != TableModelEvent.ALL_COLUMNS)
+                    && (column != editor.getModelIndex())) {
+                return;
+            }
+
+            int count = lastRow - firstRow + 1;
+            int rows = model.getRowCount();
+            if (current != null) {
+                if ((eventType == TableModelEvent.INSERT)
+                        && (firstRow == current.rows)
+                        && (rows == (current.rows + count))) {
+                    current.rows = rows;
+
+                    return;
+                }
+
+                if ((eventType == TableModelEvent.DELETE) && (firstRow == 0)
+                        && (lastRow < (current.counter.rows - current.removed))
+                        && (rows >= (current.rows - count))) {
+                    current.rows -= count;
+                    current.removed += count;
+
+                    return;
+                }
+            }
+
+            restart();
+        }
+
+        /** Restarts the load, once any pending event has been handled. */
+        void restart() {
+            if (current != null) {
+                current.cancelled = true;
+                current = null;
+            }
+
+            if (!restartPending) {
+                restartPending = true;
+                SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            restartPending = false;
+                            if (!cancelled && (loaders.get(editor)
+                                        == ChoicesLoader.this)) {
+                                editor.setChoices(editor.getCustomChoices());
+                                start();
+                            }
+                        }
+                    });
+            }
+        }
+
+        /** Stops the load. */
+        void cancel() {
+            cancelled = true;
+            if (current != null) {
+                current.cancelled = true;
+                current = null;
+            }
+
+            loaders.remove(editor);
+            editor.setChoicesLoading(false);
+        }
+
+        private void start() {
+            JTable table = handler.getTable();
+            if (table == null) {
+                cancel();
+
+                return;
+            }
+
+            TableModel model = getEventsModel(table);
+            ChoicesCounter counter = new ChoicesCounter(editor, model);
+            if (model.getRowCount() <= DIRECT_LOAD_ROWS) {
+                counter.rows = model.getRowCount();
+                extractValues(model, Collections.singletonList(counter));
+                finish(counter, counter.fillChoices(
+                        editor.getCustomChoices()));
+            } else {
+                counter.readSnapshot(model);
+                current = new Extraction(counter, editor.getChoicesPreparer());
+                editor.setChoicesLoading(true);
+                getLoadExecutor().execute(current);
+            }
+        }
+
+        private void finish(ChoicesCounter counter, Collection choices) {
+            counter.releaseSnapshot();
+            current = null;
+            loaders.remove(editor);
+            counters.put(editor, counter);
+            if (choices == null) {
+                editor.setChoicesLoading(false);
+            } else {
+                editor.setChoices(choices);
+            }
+        }
+
+        /** Background work for a load. */
+        class Extraction implements Runnable {
+            ChoicesCounter counter;
+            private IChoicesPreparer preparer;
+            volatile boolean cancelled;
+            // expected rows in the model, and rows removed from the front
+            int rows;
+            int removed;
+
+            Extraction(ChoicesCounter counter, IChoicesPreparer preparer) {
+                this.counter = counter;
+                this.preparer = preparer;
+                this.rows = counter.rows;
+            }
+
+            /**
+             * Applies to the counter, once the copied values are counted, the
+             * rows removed from the front or appended meanwhile.
+             */
+            void catchUp(TableModel model) {
+                counter.releaseSnapshot();
+                if (removed > 0) {
+                    for (int row = 0; row < removed; row++) {
+                        counter.count(row, -1);
+                    }
+
+                    counter.deleteRows(0, removed);
+                }
+
+                int from = counter.rows;
+                if (rows > from) {
+                    counter.insertRows(from, rows - from);
+                    for (int row = from; row < rows; row++) {
+                        counter.setValue(model, row);
+                        counter.count(row, 1);
+                    }
+                }
+
+                counter.flushChoices();
+            }
+
+            public void run() {
+                try {
+                    counter.countSnapshot();
+
+                    List values = (List) counter.fillChoices(new ArrayList());
+                    int size = values.size();
+                    int batch = FIRST_LOAD_BATCH;
+                    int from = 0;
+                    do {
+                        int to = Math.min(size, from + batch);
+                        List part = values.subList(from, to);
+                        deliver(preparer.prepare(part), to == size);
+                        from = to;
+                        batch *= 2;
+                    } while ((from < size) && !cancelled);
+                } catch (RuntimeException rex) {
+                    // read the choices directly on the dispatch thread
+                    deliver(null, false);
+                }
+            }
+
+            /** Sends, on the event dispatch thread, the given choices. */
+            private void deliver(final Object choices, final boolean last) {
+                if (!cancelled) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                            public void run() {
+                                if (cancelled || (current != Extraction.this)) {
+                                    return;
+                                }
+
+                                if (choices == null) {
+                                    editor.setChoicesLoading(false);
+
+                                    TableModel model = getEventsModel(
+                                            handler.getTable());
+                                    ChoicesCounter direct = new ChoicesCounter(
+                                            editor, model);
+                                    direct.rows = model.getRowCount();
+                                    extractValues(model,
+                                        Collections.singletonList(direct));
+                                    finish(direct, direct.fillChoices(
+                                            editor.getCustomChoices()));
+                                } else {
+                                    editor.addPreparedChoices(choices);
+                                    if (last) {
+                                        catchUp(getEventsModel(
+                                                handler.getTable()));
+                                        finish(counter, null);
+                                    }
+                                }
+                            }
+                        });
+                }
+            }
+        }
+    }
+
 }
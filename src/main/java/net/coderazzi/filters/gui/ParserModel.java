@@ -41,8 +41,10 @@ import java.util.HashMap;
 import java.util.Map;
 
 import net.coderazzi.filters.IParser;
+import net.coderazzi.filters.parser.ComparableComparator;
 import net.coderazzi.filters.parser.DateComparator;
 import net.coderazzi.filters.parser.Parser;
+import net.coderazzi.filters.parser.StringComparator;
 
 
 /**
@@ -62,12 +64,6 @@ public class ParserModel implements IParserModel {
     private static Map<Class, Format> basicFormats =
         new HashMap<Class, Format>();
 
-    /** String comparator, case dependent. */
-    private static Comparator<String> strComparator;
-
-    /** String comparator, ignoring case. */
-    private static Comparator<String> icStrComparator;
-
     /** Formats defined for the model. */
     private Map<Class, Format> formats = new HashMap<Class, Format>();
 
@@ -198,29 +194,12 @@ public class ParserModel implements IParserModel {
         return stringComparator(noCase);
     }
 
-    /** Returns a default singleton comparator for the given case flag. */
+    /**
+     * Returns a default singleton comparator for the given case flag; it is a
+     * {@link StringComparator}, supporting precomputed sort keys.
+     */
     public static Comparator<String> stringComparator(boolean ignoreCase) {
-        if (ignoreCase) {
-            if (icStrComparator == null) {
-                icStrComparator = new Comparator<String>() {
-                    public int compare(String o1, String o2) {
-                        return o1.compareToIgnoreCase(o2);
-                    }
-                };
-            }
-
-            return icStrComparator;
-        }
-
-        if (strComparator == null) {
-            strComparator = new Comparator<String>() {
-                public int compare(String o1, String o2) {
-                    return o1.compareTo(o2);
-                }
-            };
-        }
-
-        return strComparator;
+        return StringComparator.getInstance(ignoreCase);
     }
 
     /** Returns the {@link Format} defined for every FilterModel. */
@@ -421,11 +400,7 @@ public class ParserModel implements IParserModel {
 
     /** Default comparator for Comparable instances. */
     private static Comparator COMPARABLE_COMPARATOR =
-        new Comparator<Comparable>() {
-            public int compare(Comparable o1, Comparable o2) {
-                return o1.compareTo(o2);
-            }
-        };
+        new ComparableComparator();
 
     private static Comparator DEFAULT_COMPARATOR = new Comparator() {
         public int compare(Object o1, Object o2) {
@@ -404,6 +404,73 @@ public class TableFilterHeader extends JPanel {
         filtersHandler.removeFilter(filter);
     }
 
+    /**
+     * Sets the maximum number of filter states kept for undo / redo; zero
+     * disables the undo support.
+     */
+    public void setMaxFilterStates(int max) {
+        filtersHandler.setMaxFilterStates(max);
+    }
+
+    /** Returns the maximum number of filter states kept for undo / redo. */
+    public int getMaxFilterStates() {
+        return filtersHandler.getMaxFilterStates();
+    }
+
+    /** Returns true if there is a previous filter state to restore. */
+    public boolean canUndoFilter() {
+        return filtersHandler.canUndoFilterState();
+    }
+
+    /** Returns true if there is a next filter state to restore. */
+    public boolean canRedoFilter() {
+        return filtersHandler.canRedoFilterState();
+    }
+
+    /**
+     * <p>Restores the previous filter state: the content of each editor, and
+     * the user filters added to the header, with their enabled flag.</p>
+     *
+     * <p>While the table model is not modified, the rows of the restored
+     * state are directly displayed, without running again the filters.</p>
+     *
+     * @return  false if there is no previous state
+     */
+    public boolean undoFilter() {
+        return filtersHandler.undoFilterState();
+    }
+
+    /**
+     * Restores the next filter state, after a call to {@link #undoFilter()}.
+     *
+     * @return  false if there is no next state
+     */
+    public boolean redoFilter() {
+        return filtersHandler.redoFilterState();
+    }
+
+    /**
+     * <p>Starts a bulk update on the table model: until the matching call to
+     * {@link #endUpdate()}, the model events are just accumulated, and the
+     * filter and the editors' choices are then updated only once.</p>
+     *
+     * <p>Rows appended at the end of the model are summarized into a single
+     * insertion, where only the new rows are filtered; any other change
+     * (deletions, insertions in the middle of the model) implies reapplying
+     * the filter on the whole model.</p>
+     *
+     * <p>Calls can be nested; the update ends with the outermost endUpdate
+     * call. The table is not updated during the bulk update.</p>
+     */
+    public void beginUpdate() {
+        filtersHandler.beginUpdate();
+    }
+
+    /** Ends a bulk update started with {@link #beginUpdate()}. */
+    public void endUpdate() {
+        filtersHandler.endUpdate();
+    }
+
     /** Adds a new observer to the header. */
     public void addHeaderObserver(IFilterHeaderObserver observer) {
         observers.add(observer);
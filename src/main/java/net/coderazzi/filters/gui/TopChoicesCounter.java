@@ -0,0 +1,237 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.swing.table.TableModel;
+
+import net.coderazzi.filters.gui.editor.FilterEditor;
+
+
+/**
+ * Internal class to keep approximate row counts of the most frequent values
+ * in the column associated to an editor, using the Space-Saving algorithm:
+ * only a bounded number of values is monitored; a value not monitored
+ * replaces the one with the lowest count, inheriting that count as error -so
+ * counts can be overestimated, but the most frequent values are always
+ * monitored-. The reported counts exclude the error, so they are a lower
+ * bound of the real counts.<br>
+ * Each row keeps the monitored entry counting its value, so that deleted or
+ * updated rows can decrement that count, if the entry is still monitored;
+ * rows deleted from the front just move the position of the first row.
+ */
+class TopChoicesCounter {
+
+    FilterEditor editor;
+    int column;
+    // number of rows handled
+    int rows;
+    // entry counting the value on each row, from the position start
+    private Entry entries[];
+    private int start;
+    // number of values to report
+    private int top;
+    private int capacity;
+    private Map<Object, Entry> monitored = new HashMap<Object, Entry>();
+    private TreeSet<Entry> byCount = new TreeSet<Entry>();
+    private long sequence;
+    // set when any value has been discarded
+    private boolean evicted;
+    // values last set on the editor
+    Set<Object> published;
+
+    public TopChoicesCounter(FilterEditor editor, int top) {
+        this.editor = editor;
+        this.column = editor.getModelIndex();
+        this.top = top;
+        this.capacity = Math.max(top * 4, 64);
+        this.entries = new Entry[16];
+    }
+
+    /** Reads all the values in the model. */
+    public void readAll(TableModel model) {
+        int size = model.getRowCount();
+        ensureCapacity(size);
+        for (; rows < size; rows++) {
+            add(rows, model.getValueAt(rows, column));
+        }
+    }
+
+    /** Handles the insertion of the given rows (already in the model). */
+    public void insertRows(TableModel model, int first, int last) {
+        int count = last - first + 1;
+        ensureCapacity(rows + count);
+        System.arraycopy(entries, start + first, entries,
+            start + first + count, rows - first);
+        rows += count;
+        for (int row = first; row <= last; row++) {
+            add(row, model.getValueAt(row, column));
+        }
+    }
+
+    /** Handles the deletion of the given rows. */
+    public void deleteRows(int first, int last) {
+        for (int row = start + first; row <= (start + last); row++) {
+            remove(entries[row]);
+            entries[row] = null;
+        }
+
+        int count = last - first + 1;
+        if (first == 0) {
+            start += count;
+        } else {
+            int end = start + last + 1;
+            System.arraycopy(entries, end, entries, start + first,
+                rows - last - 1);
+            for (int row = start + rows - count; row < (start + rows); row++) {
+                entries[row] = null;
+            }
+        }
+
+        rows -= count;
+    }
+
+    /** Handles the update of the given rows. */
+    public void updateRows(TableModel model, int first, int last) {
+        for (int row = first; row <= last; row++) {
+            remove(entries[start + row]);
+            add(row, model.getValueAt(row, column));
+        }
+    }
+
+    /**
+     * Returns the most frequent values, with their guaranteed counts (the
+     * real counts can be higher).
+     */
+    public Map<Object, Integer> getTopValues() {
+        Map<Object, Integer> ret = new HashMap<Object, Integer>();
+        int skip = byCount.size() - top;
+        for (Entry entry : byCount) {
+            if (--skip < 0) {
+                ret.put(entry.value, entry.count - entry.error);
+            }
+        }
+
+        return ret;
+    }
+
+    /** Returns true if there are more values than those reported. */
+    public boolean hasMoreValues() {
+        return evicted || (monitored.size() > top);
+    }
+
+    private void add(int row, Object value) {
+        Entry entry = monitored.get(value);
+        if (entry != null) {
+            byCount.remove(entry);
+            entry.count++;
+        } else {
+            int error = 0;
+            if (monitored.size() == capacity) {
+                Entry min = byCount.first();
+                discard(min);
+                error = min.count;
+                evicted = true;
+            }
+
+            entry = new Entry(value, error + 1);
+            entry.error = error;
+            monitored.put(value, entry);
+        }
+
+        entry.sequence = sequence++;
+        byCount.add(entry);
+        entries[start + row] = entry;
+    }
+
+    private void remove(Entry entry) {
+        // rows counted by a discarded entry are not monitored anymore
+        if ((entry != null) && !entry.discarded) {
+            byCount.remove(entry);
+            // once the count is only error, the value is not monitored
+            if (--entry.count > entry.error) {
+                byCount.add(entry);
+            } else {
+                monitored.remove(entry.value);
+                entry.discarded = true;
+            }
+        }
+    }
+
+    private void discard(Entry entry) {
+        byCount.remove(entry);
+        monitored.remove(entry.value);
+        entry.discarded = true;
+    }
+
+    /**
+     * Ensures that the given number of rows can be handled, moving the rows
+     * to the start of the entries if needed.
+     */
+    private void ensureCapacity(int size) {
+        int capacity = entries.length;
+        if ((start + size) > capacity) {
+            // growing when mostly full amortizes the moves
+            Entry target[] = (size > ((capacity / 3) * 2))
+                ? new Entry[Math.max(size, capacity * 2)] : entries;
+            System.arraycopy(entries, start, target, 0, rows);
+            if (target == entries) {
+                Arrays.fill(entries, rows, start + rows, null);
+            }
+
+            entries = target;
+            start = 0;
+        }
+    }
+
+    /** Monitored value, sorted by count. */
+    static class Entry implements Comparable<Entry> {
+        Object value;
+        int count;
+        int error;
+        long sequence;
+        boolean discarded;
+
+        Entry(Object value, int count) {
+            this.value = value;
+            this.count = count;
+        }
+
+        public int compareTo(Entry o) {
+            if (count != o.count) {
+                return (count < o.count) ? -1 : 1;
+            }
+
+            return (sequence < o.sequence) ? -1
+                                           : ((sequence == o.sequence) ? 0 : 1);
+        }
+    }
+}
@@ -28,6 +28,8 @@ package net.coderazzi.filters.gui.editor;
 import java.util.Comparator;
 import java.util.List;
 
+import net.coderazzi.filters.parser.StringComparator;
+
 
 /** Class to find matches in the lists (history / choices). */
 class ChoiceMatch {
@@ -99,6 +101,19 @@ class ChoiceMatch {
                                         String     b,
                                         Comparator stringComparator) {
         int max = Math.min(a.length(), b.length());
+        if (stringComparator instanceof StringComparator) {
+            StringComparator folder = (StringComparator) stringComparator;
+            for (int i = 0; i < max; i++) {
+                char f = a.charAt(i);
+                char s = b.charAt(i);
+                if ((f != s) && (folder.foldChar(f) != folder.foldChar(s))) {
+                    return i;
+                }
+            }
+
+            return max;
+        }
+
         for (int i = 0; i < max; i++) {
             char f = a.charAt(i);
             char s = b.charAt(i);
@@ -29,14 +29,20 @@ import java.text.Collator;
 import java.text.Format;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.AbstractListModel;
 
 import net.coderazzi.filters.gui.CustomChoice;
+import net.coderazzi.filters.gui.FilterSettings;
+import net.coderazzi.filters.parser.StringComparator;
 
 
 /**
@@ -55,6 +61,14 @@ import net.coderazzi.filters.gui.CustomChoice;
  * associated to an editor; searching for a custom choice from a given string is
  * done therefore linearly -with obvious performance drawbacks in cases with
  * many many custom choices-.</p>
+ *
+ * <p>If the string comparator is a {@link StringComparator}, the sort keys of
+ * the non custom choices are kept, so sorting and searching compare just the
+ * precomputed keys.</p>
+ *
+ * <p>Each choice keeps a reference count, incremented each time that is added,
+ * so that choices can be removed once all the values mapping to them are
+ * removed.</p>
  */
 class ChoicesListModel extends AbstractListModel {
 
@@ -64,28 +78,157 @@ class ChoicesListModel extends AbstractListModel {
     private int customChoices;
     boolean useFormatter;
     Comparator comparator;
+    // sort keys of the non custom choices, if keyComparator is defined
+    private List keys = new ArrayList();
+    private StringComparator keyComparator;
+    // reference counts of each choice, as Integer instances
+    private List counts = new ArrayList();
+    // LOADING or MORE, if displayed after the choices
+    private Object trailer;
+    // row counts of the choices, if defined
+    private Map<Object, Integer> frequencies;
+    // incremented when the conversion of the content changes
+    private int conversion;
+    // completion index of the non custom choices, built on demand
+    private ChoicesTrie trie;
+
+    /** Row displayed, as last element, while the choices are loaded. */
+    public static final Object LOADING = new Object() {
+        @Override public String toString() {
+            return FilterSettings.loadingChoicesString;
+        }
+    };
+
+    /**
+     * Row displayed, as last element, when the choices include only some of
+     * the existing values.
+     */
+    public static final Object MORE = new Object() {
+        @Override public String toString() {
+            return FilterSettings.moreChoicesString;
+        }
+    };
 
     public ChoicesListModel() {
         this.content = new ArrayList();
-        setStringContent(null, Collator.getInstance());
+        setStringContent(null,
+            StringComparator.getInstance(Collator.getInstance()));
         clearContent();
     }
 
     /** {@link AbstractListModel} interface. */
     public int getSize() {
-        return content.size();
+        return (trailer == null) ? content.size() : (content.size() + 1);
     }
 
     /** {@link AbstractListModel} interface. */
     public Object getElementAt(int i) {
-        return content.get(i);
+        return (i == content.size()) ? trailer : content.get(i);
+    }
+
+    /** Returns the number of custom choices, placed first. */
+    public int getCustomChoicesCount() {
+        return customChoices;
+    }
+
+    /**
+     * Returns the positions [from, to) of the non custom choices starting with
+     * the given string, or null if they are not contiguous: they are if the
+     * content is sorted on string sort keys.
+     */
+    public int[] getPrefixRange(String prefix) {
+        if ((keyComparator == null)
+                || !(keyComparator.getSortKey("") instanceof String)) {
+            return null;
+        }
+
+        String key = (String) keyComparator.getSortKey(prefix);
+        int from = Collections.binarySearch(keys, key);
+        int to = Collections.binarySearch(keys, key + '\uffff');
+        from = (from < 0) ? (-1 - from) : from;
+        to = (to < 0) ? (-1 - to) : to;
+
+        return new int[] { customChoices + from, customChoices + to };
+    }
+
+    /** Returns true if the given element is the LOADING or MORE row. */
+    public static boolean isTrailer(Object o) {
+        return (o == LOADING) || (o == MORE);
+    }
+
+    /** Shows or hides the {@link #LOADING} row. */
+    public void setLoading(boolean set) {
+        if (set) {
+            setTrailer(LOADING);
+        } else if (trailer == LOADING) {
+            setTrailer(null);
+        }
+    }
+
+    /** Returns true if the {@link #LOADING} row is displayed. */
+    public boolean isLoading() {
+        return trailer == LOADING;
+    }
+
+    /** Shows or hides the {@link #MORE} row. */
+    public void setMore(boolean set) {
+        if (set) {
+            setTrailer(MORE);
+        } else if (trailer == MORE) {
+            setTrailer(null);
+        }
+    }
+
+    /**
+     * Sets the row counts of the choices, specified for the values before
+     * their conversion into choices (null to remove them).
+     */
+    public void setFrequencies(Map<?, Integer> values, IChoicesParser parser) {
+        if (values == null) {
+            frequencies = null;
+        } else {
+            frequencies = new HashMap<Object, Integer>();
+            for (Map.Entry<?, Integer> entry : values.entrySet()) {
+                Object choice = toChoice(entry.getKey(), parser);
+                Integer count = frequencies.get(choice);
+                frequencies.put(choice, (count == null)
+                        ? entry.getValue() : (count + entry.getValue()));
+            }
+        }
+
+        fireContentsChanged(this, 0, getSize());
+    }
+
+    /** Returns the row count of the given choice, or null if not defined. */
+    public Integer getFrequency(Object choice) {
+        return (frequencies == null) ? null : frequencies.get(choice);
+    }
+
+    private void setTrailer(Object set) {
+        if (trailer != set) {
+            int index = content.size();
+            if (trailer != null) {
+                trailer = null;
+                fireIntervalRemoved(this, index, index);
+            }
+
+            if (set != null) {
+                trailer = set;
+                fireIntervalAdded(this, index, index);
+            }
+        }
     }
 
     /** Clears all content (but ALL matcher). */
     public void clearContent() {
         int size = getSize();
         content.clear();
+        keys.clear();
+        counts.clear();
+        frequencies = null;
+        trie = null;
         content.add(CustomChoice.MATCH_ALL);
+        counts.add(1);
         customChoices = 1;
         fireIntervalRemoved(this, 1, size);
     }
@@ -113,27 +256,72 @@ class ChoicesListModel extends AbstractListModel {
      * options in this model or the added list.
      */
     public String getCompletion(String base, List addedList) {
+        String ret = base;
+        int len = base.length();
+        String completion = getNonCustomCompletion(base);
+        if (completion != null) {
+            if (completion.length() == 0) {
+                return "";
+            }
+
+            ret = base + completion;
+        }
+
+        List use[] = { content.subList(0, customChoices), addedList };
+        for (List l : use) {
+            for (Object o : l) {
+                String s = o.toString();
+                int m = ChoiceMatch.getMatchingLength(ret, s, comparator);
+                if (m == len) {
+                    if (ret != base) {
+                        return ""; // exact match!
+                    }
+
+                    ret = s;
+                } else if (m > len) {
+                    ret = ret.substring(0, m);
+                }
+            }
+        }
+
+        return ret.substring(len);
+    }
+
+    /**
+     * Returns the completion of the given string among the non custom choices,
+     * with the semantics of {@link ChoicesTrie#getCompletion(String)}.<br>
+     * If the sort keys are available, a {@link ChoicesTrie} is built the first
+     * time, and kept until the content changes.
+     */
+    private String getNonCustomCompletion(String base) {
         int cs = content.size();
-        int pos = Collections.binarySearch(content.subList(customChoices, cs),
-                base, comparator);
+        if (keyComparator != null) {
+            if (trie == null) {
+                trie = new ChoicesTrie(keyComparator);
+                for (int i = customChoices; i < cs; i++) {
+                    trie.add((String) content.get(i));
+                }
+            }
+
+            return trie.getCompletion(base);
+        }
+
+        int pos = searchNonCustom(base);
         if (pos >= 0) {
             // exact match, do nothing else
             return "";
         }
 
-        String ret = base;
         int len = base.length();
         pos = customChoices - pos - 1;
         if (pos < cs) {
-            String use = content.get(pos).toString();
+            String ret = content.get(pos).toString();
             // the position found should start with the base string.
             // if not, no choice start with it
-            if (ChoiceMatch.getMatchingLength(base, use, comparator) >= len) {
-                ret = use;
-
+            if (ChoiceMatch.getMatchingLength(base, ret, comparator) >= len) {
                 int maxLen = ret.length();
                 while (++pos < cs) {
-                    use = content.get(pos).toString();
+                    String use = content.get(pos).toString();
 
                     int m = ChoiceMatch.getMatchingLength(ret, use, comparator);
                     if (m < len) {
@@ -147,28 +335,50 @@ class ChoicesListModel extends AbstractListModel {
                     }
                 }
 
-                ret = ret.substring(0, maxLen);
+                return ret.substring(len, maxLen);
             }
         }
 
-        List use[] = { content.subList(0, customChoices), addedList };
-        for (List l : use) {
-            for (Object o : l) {
-                String s = o.toString();
-                int m = ChoiceMatch.getMatchingLength(ret, s, comparator);
-                if (m == len) {
-                    if (ret != base) {
-                        return ""; // exact match!
-                    }
+        return null;
+    }
 
-                    ret = s;
-                } else if (m > len) {
-                    ret = ret.substring(0, m);
-                }
-            }
+    /**
+     * Returns an object to prepare choices from any thread; if the content is
+     * not text-based, the choices are only sorted once added.
+     */
+    public IChoicesPreparer createPreparer(IChoicesParser parser) {
+        return new Preparer(parser);
+    }
+
+    /**
+     * Adds the choices prepared by a {@link IChoicesPreparer} obtained from
+     * this model; they are ignored if the content's conversion has changed
+     * since the preparer was created.
+     *
+     * @return  true if there are any changes after the operation
+     */
+    public boolean addPreparedContent(Object prepared) {
+        PreparedChoices batch = (PreparedChoices) prepared;
+        if (batch.conversion != conversion) {
+            return false;
         }
 
-        return ret.substring(len);
+        boolean changed = false;
+        for (Object o : batch.custom) {
+            changed = addContent(o) || changed;
+        }
+
+        if (!batch.sorted) {
+            sortChoices(batch.choices, getKeyOrder());
+        }
+
+        changed = mergeSorted(batch.choices) || changed;
+        if (changed) {
+            addContent(CustomChoice.MATCH_ALL);
+            fireContentsChanged(this, 0, getSize());
+        }
+
+        return changed;
     }
 
     /** Specifies that the content is to be handled as strings. */
@@ -177,9 +387,12 @@ class ChoicesListModel extends AbstractListModel {
         boolean ret = !useFormatter || (format != this.format)
                 || (comparator != stringComparator);
         if (ret) {
+            conversion++;
             useFormatter = true;
             this.format = format;
             this.comparator = stringComparator;
+            this.keyComparator = (stringComparator instanceof StringComparator)
+                ? (StringComparator) stringComparator : null;
             clearContent();
         }
 
@@ -190,9 +403,11 @@ class ChoicesListModel extends AbstractListModel {
     public boolean setRenderedContent(Comparator classComparator) {
         boolean ret = useFormatter || (comparator != classComparator);
         if (ret) {
+            conversion++;
             useFormatter = false;
             this.format = null;
             this.comparator = classComparator;
+            this.keyComparator = null;
             clearContent();
         }
 
@@ -210,24 +425,18 @@ class ChoicesListModel extends AbstractListModel {
      */
     public boolean addContent(Collection addedContent, IChoicesParser parser) {
         boolean changed = false;
+        List added = new ArrayList(addedContent.size());
         for (Object o : addedContent) {
-            if (!(o instanceof CustomChoice)) {
-                if (o == null) {
-                    o = CustomChoice.MATCH_EMPTY;
-                } else if (useFormatter) {
-                    String s = (format == null) ? o.toString()
-                                                : format.format(o);
-                    if (s.length() == 0) {
-                        o = CustomChoice.MATCH_EMPTY;
-                    } else {
-                        o = parser.escapeChoice(s);
-                    }
-                }
+            o = toChoice(o, parser);
+            if (o instanceof CustomChoice) {
+                // not many custom choices expected: insert them directly
+                changed = addContent(o) || changed;
+            } else {
+                added.add(o);
             }
-
-            changed = addContent(o) || changed;
         }
 
+        changed = mergeContent(added) || changed;
         if (changed) {
             addContent(CustomChoice.MATCH_ALL);
             fireContentsChanged(this, 0, getSize());
@@ -236,11 +445,149 @@ class ChoicesListModel extends AbstractListModel {
         return changed;
     }
 
+    /**
+     * Removes choices previously added; a choice is only removed when its
+     * reference count drops to zero.
+     *
+     * @return  true if there are any changes after the operation
+     */
+    public boolean removeContent(Collection removedContent,
+                                 IChoicesParser parser) {
+        BitSet removed = null;
+        for (Object o : removedContent) {
+            o = toChoice(o, parser);
+
+            int index = indexOf(o);
+            if ((index >= 0) && (o != CustomChoice.MATCH_ALL)) {
+                int count = (Integer) counts.get(index) - 1;
+                counts.set(index, count);
+                if (count == 0) {
+                    if (removed == null) {
+                        removed = new BitSet(content.size());
+                    }
+
+                    removed.set(index);
+                }
+            }
+        }
+
+        if (removed == null) {
+            return false;
+        }
+
+        // compact the content in a single pass
+        int size = content.size();
+        int kept = 0;
+        int keptCustom = 0;
+        for (int i = 0; i < size; i++) {
+            if (!removed.get(i)) {
+                content.set(kept, content.get(i));
+                counts.set(kept, counts.get(i));
+                if (i < customChoices) {
+                    keptCustom++;
+                } else if (keyComparator != null) {
+                    keys.set(kept - keptCustom, keys.get(i - customChoices));
+                }
+
+                kept++;
+            }
+        }
+
+        int keptKeys = kept - keptCustom;
+        content.subList(kept, size).clear();
+        counts.subList(kept, size).clear();
+        if (keyComparator != null) {
+            keys.subList(keptKeys, keys.size()).clear();
+        }
+
+        customChoices = keptCustom;
+        trie = null;
+
+        // notify each removed interval, starting with the last one, so that
+        // the indexes of each interval are valid when notified
+        List intervals = new ArrayList();
+        for (int i = removed.nextSetBit(0); i >= 0;) {
+            int end = removed.nextClearBit(i);
+            intervals.add(new int[] { i, end - 1 });
+            i = removed.nextSetBit(end);
+        }
+
+        for (int i = intervals.size() - 1; i >= 0; i--) {
+            int interval[] = (int[]) intervals.get(i);
+            fireIntervalRemoved(this, interval[0], interval[1]);
+        }
+
+        return true;
+    }
+
+    /**
+     * Converts a value into the choice to display: null values, or values
+     * formatted as empty strings, become {@link CustomChoice#MATCH_EMPTY}.
+     */
+    private Object toChoice(Object o, IChoicesParser parser) {
+        return toChoice(o, parser, useFormatter, format);
+    }
+
+    /** @see  #toChoice(Object, IChoicesParser) */
+    static Object toChoice(Object         o,
+                           IChoicesParser parser,
+                           boolean        useFormatter,
+                           Format         format) {
+        if (!(o instanceof CustomChoice)) {
+            if (o == null) {
+                o = CustomChoice.MATCH_EMPTY;
+            } else if (useFormatter) {
+                String s = (format == null) ? o.toString() : format.format(o);
+                if (s.length() == 0) {
+                    o = CustomChoice.MATCH_EMPTY;
+                } else {
+                    o = parser.escapeChoice(s);
+                }
+            }
+        }
+
+        return o;
+    }
+
+    /** Returns the position of the given choice, or -1 if not found. */
+    private int indexOf(Object o) {
+        int pos;
+        if ((keyComparator != null) && !(o instanceof CustomChoice)) {
+            pos = searchNonCustom((String) o);
+            if (pos >= 0) {
+                pos += customChoices;
+            }
+        } else {
+            pos = Collections.binarySearch(content, o, wrapperComparator);
+        }
+
+        return (pos >= 0) ? pos : -1;
+    }
+
     private boolean addContent(Object o) {
+        if ((keyComparator != null) && !(o instanceof CustomChoice)) {
+            Comparable key = keyComparator.getSortKey((String) o);
+            int pos = Collections.binarySearch(keys, key);
+            if (pos < 0) {
+                pos = -1 - pos;
+                keys.add(pos, key);
+                content.add(customChoices + pos, o);
+                counts.add(customChoices + pos, 1);
+                trie = null;
+
+                return true;
+            }
+
+            increaseCount(customChoices + pos, 1);
+
+            return false;
+        }
+
         // using the wrapper comparator to handle also CustomChoices
         int pos = Collections.binarySearch(content, o, wrapperComparator);
         if (pos < 0) {
             content.add(-1 - pos, o);
+            counts.add(-1 - pos, 1);
             if (o instanceof CustomChoice) {
                 customChoices++;
             }
@@ -248,9 +595,126 @@ class ChoicesListModel extends AbstractListModel {
             return true;
         }
 
+        increaseCount(pos, 1);
+
         return false;
     }
 
+    private void increaseCount(int index, int increase) {
+        counts.set(index, (Integer) counts.get(index) + increase);
+    }
+
+    /**
+     * Merges the given non custom choices with the existing ones: the choices
+     * are sorted once, and then merged linearly, discarding duplicates.
+     */
+    private boolean mergeContent(List added) {
+        int size = added.size();
+        if (size == 0) {
+            return false;
+        }
+
+        if (size == 1) {
+            return addContent(added.get(0));
+        }
+
+        KeyedChoice sorted[] = new KeyedChoice[size];
+        for (int i = 0; i < size; i++) {
+            Object o = added.get(i);
+            sorted[i] = new KeyedChoice((keyComparator == null)
+                    ? o : keyComparator.getSortKey((String) o), o);
+        }
+
+        sortChoices(sorted, getKeyOrder());
+
+        return mergeSorted(sorted);
+    }
+
+    /** Returns the comparator for the sort keys of the non custom choices. */
+    private Comparator getKeyOrder() {
+        return (keyComparator == null) ? comparator : NATURAL_ORDER;
+    }
+
+    /** Sorts the given choices, using their sort keys. */
+    static void sortChoices(KeyedChoice choices[], final Comparator keyOrder) {
+        Arrays.sort(choices, new Comparator<KeyedChoice>() {
+                public int compare(KeyedChoice o1, KeyedChoice o2) {
+                    return keyOrder.compare(o1.key, o2.key);
+                }
+            });
+    }
+
+    /**
+     * Merges the given sorted non custom choices with the existing ones,
+     * linearly, discarding duplicates.
+     */
+    private boolean mergeSorted(KeyedChoice sorted[]) {
+        int size = sorted.length;
+        if (size == 0) {
+            return false;
+        }
+
+        Comparator keyOrder = getKeyOrder();
+        int existing = content.size() - customChoices;
+        List newContent = new ArrayList(content.size() + size);
+        List newCounts = new ArrayList(content.size() + size);
+        List newKeys = (keyComparator == null)
+            ? null : new ArrayList(existing + size);
+        newContent.addAll(content.subList(0, customChoices));
+        newCounts.addAll(counts.subList(0, customChoices));
+
+        Object last = null;
+        int i = 0;
+        int j = 0;
+        while ((i < existing) || (j < size)) {
+            Object key;
+            Object choice;
+            Object count = 1;
+            if (i < existing) {
+                choice = content.get(customChoices + i);
+                key = (keyComparator == null) ? choice : keys.get(i);
+                if ((j < size) && (keyOrder.compare(key, sorted[j].key) > 0)) {
+                    key = sorted[j].key;
+                    choice = sorted[j++].choice;
+                } else {
+                    count = counts.get(customChoices + i++);
+                }
+            } else {
+                key = sorted[j].key;
+                choice = sorted[j++].choice;
+            }
+
+            // existing choices are merged first, so they are always kept
+            if ((newContent.size() == customChoices)
+                    || (keyOrder.compare(last, key) != 0)) {
+                newContent.add(choice);
+                newCounts.add(count);
+                if (newKeys != null) {
+                    newKeys.add(key);
+                }
+
+                last = key;
+            } else {
+                int index = newCounts.size() - 1;
+                newCounts.set(index,
+                    (Integer) newCounts.get(index) + (Integer) count);
+            }
+        }
+
+        counts = newCounts;
+        if (newContent.size() == content.size()) {
+            return false;
+        }
+
+        content = newContent;
+        trie = null;
+        if (newKeys != null) {
+            keys = newKeys;
+        }
+
+        return true;
+    }
+
     /** Creation of the Match, for text based, sorted content. */
     private ChoiceMatch findOnSortedContent(String  strStart,
                                             boolean fullMatch) {
@@ -263,9 +727,7 @@ class ChoicesListModel extends AbstractListModel {
                     comparator, strStart, fullMatch);
             if (!ret.exact) {
                 // not exact, search (exact) among the non custom choices too
-                int pos = Collections.binarySearch(content.subList(
-                            customChoices, content.size()), strStart,
-                        comparator);
+                int pos = searchNonCustom(strStart);
                 if (pos >= 0) {
                     // found it, do nothing else (it is exact)
                     ret.exact = true;
@@ -301,6 +763,98 @@ class ChoicesListModel extends AbstractListModel {
         return ret;
     }
 
+    /**
+     * Binary search of the given string among the non custom choices, using
+     * their sort keys, if available.
+     *
+     * @return  the position, relative to the first non custom choice, with the
+     *          same semantics as {@link Collections#binarySearch(List, Object)}
+     */
+    private int searchNonCustom(String s) {
+        if (keyComparator != null) {
+            return Collections.binarySearch(keys, keyComparator.getSortKey(s));
+        }
+
+        return Collections.binarySearch(content.subList(customChoices,
+                    content.size()), s, comparator);
+    }
+
+    /** Choice to merge, associated to its sort key. */
+    static class KeyedChoice {
+        Object key;
+        Object choice;
+
+        KeyedChoice(Object key, Object choice) {
+            this.key = key;
+            this.choice = choice;
+        }
+    }
+
+    /**
+     * {@link IChoicesPreparer} implementation: it uses its own copies of the
+     * format and of the sort keys comparator, so text-based choices can be
+     * prepared, and sorted, from any thread.
+     */
+    class Preparer implements IChoicesPreparer {
+        private boolean useFormatter = ChoicesListModel.this.useFormatter;
+        private IChoicesParser parser;
+        private Format format;
+        private StringComparator keyComparator;
+        private int conversion;
+
+        Preparer(IChoicesParser parser) {
+            Format base = ChoicesListModel.this.format;
+            StringComparator keys = ChoicesListModel.this.keyComparator;
+            this.parser = parser;
+            this.format = (base == null) ? null : (Format) base.clone();
+            this.keyComparator = (keys == null) ? null : keys.copy();
+            this.conversion = ChoicesListModel.this.conversion;
+        }
+
+        /** {@link IChoicesPreparer} interface. */
+        public Object prepare(Collection<?> values) {
+            PreparedChoices ret = new PreparedChoices(conversion);
+            List<KeyedChoice> choices = new ArrayList<KeyedChoice>(
+                    values.size());
+            for (Object o : values) {
+                o = toChoice(o, parser, useFormatter, format);
+                if (o instanceof CustomChoice) {
+                    ret.custom.add(o);
+                } else {
+                    choices.add(new KeyedChoice((keyComparator == null)
+                            ? o : keyComparator.getSortKey((String) o), o));
+                }
+            }
+
+            ret.choices = choices.toArray(new KeyedChoice[choices.size()]);
+            if (keyComparator != null) {
+                sortChoices(ret.choices, NATURAL_ORDER);
+                ret.sorted = true;
+            }
+
+            return ret;
+        }
+    }
+
+    /** Choices created by a {@link Preparer}. */
+    static class PreparedChoices {
+        int conversion;
+        List<Object> custom = new ArrayList<Object>();
+        KeyedChoice choices[];
+        boolean sorted;
+
+        PreparedChoices(int conversion) {
+            this.conversion = conversion;
+        }
+    }
+
+    /** Comparator for the sort keys. */
+    private static final Comparator NATURAL_ORDER = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            return ((Comparable) o1).compareTo(o2);
+        }
+    };
+
     private Comparator wrapperComparator = new Comparator() {
         public int compare(Object o1, Object o2) {
             if (o1 instanceof CustomChoice) {
@@ -0,0 +1,186 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui.editor;
+
+import net.coderazzi.filters.parser.StringComparator;
+
+
+/**
+ * Radix tree over the text choices, to find their completions in a time
+ * proportional to the length of the completed string.<br>
+ * Characters are compared after folding them with a {@link StringComparator};
+ * the labels of the nodes are not copied, but refer to the characters of the
+ * first string added through them.
+ */
+class ChoicesTrie {
+
+    private StringComparator comparator;
+    private Node root = new Node("", 0, 0);
+
+    public ChoicesTrie(StringComparator comparator) {
+        this.comparator = comparator;
+    }
+
+    /** Adds a new string. */
+    public void add(String s) {
+        Node node = root;
+        int pos = 0;
+        int len = s.length();
+        while (pos < len) {
+            Node child = node.getChild(comparator.foldChar(s.charAt(pos)));
+            if (child == null) {
+                child = new Node(s, pos, len);
+                node.addChild(comparator.foldChar(s.charAt(pos)), child);
+                node = child;
+                break;
+            }
+
+            int i = child.from + 1;
+            pos++;
+            while ((i < child.to) && (pos < len)
+                    && (comparator.foldChar(child.label.charAt(i))
+                        == comparator.foldChar(s.charAt(pos)))) {
+                i++;
+                pos++;
+            }
+
+            if (i < child.to) {
+                child.split(i, comparator.foldChar(child.label.charAt(i)));
+            }
+
+            node = child;
+        }
+
+        node.terminal = true;
+    }
+
+    /**
+     * Returns the completion of the given prefix: null if no string starts
+     * with it, an empty string if the prefix is itself a string, or if the
+     * strings starting with it differ just after it, and otherwise the
+     * characters following the prefix common to all those strings.
+     */
+    public String getCompletion(String prefix) {
+        Node node = root;
+        int i = 0;
+        int pos = 0;
+        int len = prefix.length();
+        while (pos < len) {
+            node = node.getChild(comparator.foldChar(prefix.charAt(pos)));
+            if (node == null) {
+                return null;
+            }
+
+            i = node.from + 1;
+            pos++;
+            while ((pos < len) && (i < node.to)) {
+                if (comparator.foldChar(node.label.charAt(i))
+                        != comparator.foldChar(prefix.charAt(pos))) {
+                    return null;
+                }
+
+                i++;
+                pos++;
+            }
+        }
+
+        if ((i == node.to) && (node.terminal || (node.size != 1))) {
+            return "";
+        }
+
+        StringBuilder ret = new StringBuilder();
+        ret.append(node.label, i, node.to);
+        while (!node.terminal && (node.size == 1)) {
+            node = node.children[0];
+            ret.append(node.label, node.from, node.to);
+        }
+
+        return ret.toString();
+    }
+
+    /** Node in the tree, whose label is a range in a string. */
+    static class Node {
+        String label;
+        int from;
+        int to;
+        boolean terminal;
+        int size;
+        // the folded first character of each child
+        char keys[];
+        Node children[];
+
+        Node(String label, int from, int to) {
+            this.label = label;
+            this.from = from;
+            this.to = to;
+        }
+
+        Node getChild(char key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+
+            return null;
+        }
+
+        void addChild(char key, Node child) {
+            if (keys == null) {
+                keys = new char[2];
+                children = new Node[2];
+            } else if (size == keys.length) {
+                char grownKeys[] = new char[size * 2];
+                Node grownChildren[] = new Node[size * 2];
+                System.arraycopy(keys, 0, grownKeys, 0, size);
+                System.arraycopy(children, 0, grownChildren, 0, size);
+                keys = grownKeys;
+                children = grownChildren;
+            }
+
+            keys[size] = key;
+            children[size++] = child;
+        }
+
+        /**
+         * Splits the node at the given label position, moving the rest of the
+         * label, and the children, to a new single child.
+         */
+        void split(int at, char key) {
+            Node rest = new Node(label, at, to);
+            rest.terminal = terminal;
+            rest.size = size;
+            rest.keys = keys;
+            rest.children = children;
+            to = at;
+            terminal = false;
+            size = 0;
+            keys = null;
+            children = null;
+            addChild(key, rest);
+        }
+    }
+}
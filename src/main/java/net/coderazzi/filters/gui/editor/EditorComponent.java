@@ -52,6 +52,7 @@ import javax.swing.text.DocumentFilter;
 
 import net.coderazzi.filters.IParser;
 import net.coderazzi.filters.IParser.InstantFilter;
+import net.coderazzi.filters.artifacts.ColumnFilter;
 import net.coderazzi.filters.artifacts.RowFilter;
 import net.coderazzi.filters.gui.CustomChoice;
 import net.coderazzi.filters.gui.Look;
@@ -128,8 +129,19 @@ class EditorComponent extends JTextField {
         controller.setContent(content);
     }
 
+    /**
+     * Returns the filter that the given content -a string or a custom
+     * choice- would create, or null if the editor is not in text mode or the
+     * content cannot be parsed.
+     */
+    public RowFilter createFilter(Object content) {
+        return (controller instanceof TextController)
+            ? ((TextController) controller).createFilter(content) : null;
+    }
+
     /** Requests an update on the text parser used by the editor. */
     public void updateParser() {
+        filterEditor.clearPrecomputedFilters();
         if (controller instanceof TextController) {
             ((TextController) controller).setParser(
                 filterEditor.createParser());
@@ -330,14 +342,11 @@ class EditorComponent extends JTextField {
                     filter = ((CustomChoice) cachedContent).getFilter(
                             filterEditor);
                 } else {
-                    filter = new RowFilter() {
-                        @Override public boolean include(
-                                RowFilter.Entry entry) {
-                            Object val = entry.getValue(
-                                    filterEditor.getModelIndex());
-
-                            return (val == null) ? (cachedContent == null)
-                                                 : val.equals(cachedContent);
+                    final Object content = cachedContent;
+                    filter = new ColumnFilter(filterEditor.getModelIndex()) {
+                        @Override public boolean includeValue(Object val) {
+                            return (val == null) ? (content == null)
+                                                 : val.equals(content);
                         }
                     };
                 }
@@ -435,6 +444,19 @@ class EditorComponent extends JTextField {
             activateCustomDecoration();
         }
 
+        /** @see  EditorComponent#createFilter(Object) */
+        public RowFilter createFilter(Object content) {
+            if (content instanceof CustomChoice) {
+                return ((CustomChoice) content).getFilter(filterEditor);
+            }
+
+            try {
+                return textParser.parseText(parseEscape(content.toString()));
+            } catch (ParseException pex) {
+                return null;
+            }
+        }
+
         public Object getContent() {
             if (!instantFiltering) {
                 // in this case, the content is not always updated,
@@ -589,11 +611,18 @@ class EditorComponent extends JTextField {
             try {
                 if (match.exact) {
                     content = match.content;
-                    if (match.content instanceof CustomChoice) {
-                        filter = ((CustomChoice) content).getFilter(
-                                filterEditor);
-                    } else {
-                        filter = textParser.parseText(parseEscape(text));
+                    // the rows of history entries and choices could have
+                    // been already evaluated while the table was idle
+                    filter = ((content instanceof CustomChoice)
+                            || text.equals(content))
+                        ? filterEditor.getPrecomputedFilter(content) : null;
+                    if (filter == null) {
+                        if (content instanceof CustomChoice) {
+                            filter = ((CustomChoice) content).getFilter(
+                                    filterEditor);
+                        } else {
+                            filter = textParser.parseText(parseEscape(text));
+                        }
                     }
                 } else if (instantFiltering && userUpdate) {
                 	// time to try the parseInstantText, if needed
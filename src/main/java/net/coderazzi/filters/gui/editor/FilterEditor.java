@@ -39,11 +39,15 @@ import java.awt.event.KeyEvent;
 
 import java.text.Format;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.swing.AbstractAction;
@@ -52,10 +56,13 @@ import javax.swing.JComponent;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 import javax.swing.border.Border;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.TableModel;
 
 import net.coderazzi.filters.Filter;
 import net.coderazzi.filters.IFilter;
 import net.coderazzi.filters.IParser;
+import net.coderazzi.filters.artifacts.ColumnFilter;
 import net.coderazzi.filters.artifacts.RowFilter;
 import net.coderazzi.filters.gui.AutoChoices;
 import net.coderazzi.filters.gui.ChoiceRenderer;
@@ -65,6 +72,8 @@ import net.coderazzi.filters.gui.IFilterEditor;
 import net.coderazzi.filters.gui.IParserModel;
 import net.coderazzi.filters.gui.Look;
 import net.coderazzi.filters.parser.DateComparator;
+import net.coderazzi.filters.parser.Parser;
+import net.coderazzi.filters.parser.StringComparator;
 
 
 /**
@@ -94,9 +103,11 @@ public class FilterEditor extends JComponent implements IFilterEditor {
     private Class modelClass;
     private boolean ignoreCase;
     private boolean enabledUI=true;
+    private IParser parser;
 
     FilterArrowButton downButton = new FilterArrowButton();
     EditorFilter filter = new EditorFilter();
+    PrecomputedFilters precomputedFilters = new PrecomputedFilters(this);
     FiltersHandler filtersHandler;
     EditorComponent editor;
     PopupComponent popup;
@@ -131,6 +142,7 @@ public class FilterEditor extends JComponent implements IFilterEditor {
         editor = new EditorComponent(this, popup);
         setupComponent(editor);
         add(editor, BorderLayout.CENTER);
+        popup.addListSelectionListener(precomputedFilters);
 
         this.format = getParserModel().getFormat(modelClass);
         this.ignoreCase = getParserModel().isIgnoreCase();
@@ -328,6 +340,7 @@ public class FilterEditor extends JComponent implements IFilterEditor {
     /** IFilterEditor method. */
     public void setHistory(List<Object> history){
         popup.setHistory(history);    	
+        precomputedFilters.schedule();
     }
 
     /** IFilterEditor method. */
@@ -377,8 +390,14 @@ public class FilterEditor extends JComponent implements IFilterEditor {
 
     /** Method invoked by the FiltersHandler to set the choices. */
     public void setChoices(Collection<?> choices) {
+        // if the choices were being loaded, display them once available
+        boolean redisplay = popup.isChoicesLoading() && popup.isVisible();
+        popup.setChoicesLoading(false);
         popup.clearChoices();
         addChoices(choices);
+        if (redisplay && isEditing()) {
+            showChoices();
+        }
     }
 
     /** Method invoked by the FiltersHandler to setup the choices. */
@@ -391,6 +410,96 @@ public class FilterEditor extends JComponent implements IFilterEditor {
         popup.addChoices(choices, editor.getChoicesParser());
     }
 
+    /**
+     * Method invoked by the FiltersHandler to obtain an object to prepare
+     * choices from a different thread.
+     */
+    public IChoicesPreparer getChoicesPreparer() {
+        return popup.createChoicesPreparer(editor.getChoicesParser());
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to extend the choices with those
+     * created by a {@link IChoicesPreparer}.
+     */
+    public void addPreparedChoices(Object prepared) {
+        // choices can be streamed while the popup is visible: display it again
+        boolean redisplay = popup.isVisible();
+        popup.addPreparedChoices(prepared);
+        if (redisplay && !popup.isVisible() && isEditing()) {
+            showChoices();
+        }
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to defer the choices extraction:
+     * the loader is run the first time that the choices are required.
+     */
+    public void setChoicesLoader(Runnable loader) {
+        popup.setChoicesLoader(loader);
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to show or hide the loading row;
+     * it is automatically hidden when the choices are set.
+     */
+    public void setChoicesLoading(boolean loading) {
+        popup.setChoicesLoading(loading);
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to display the row counts of the
+     * choices, given for the original values (null to hide them).
+     */
+    public void setChoicesFrequencies(Map<?, Integer> frequencies) {
+        popup.setChoicesFrequencies(frequencies, editor.getChoicesParser());
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to find out whether the choices are
+     * currently displayed.
+     */
+    public boolean isChoicesDisplayed() {
+        return popup.isVisible();
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to show or hide the row indicating
+     * that the choices do not include all the values.
+     */
+    public void setMoreChoices(boolean more) {
+        popup.setMoreChoices(more);
+    }
+
+    /** Method invoked by the FiltersHandler to remove choices. */
+    public void removeChoices(Collection<?> choices) {
+        popup.removeChoices(choices, editor.getChoicesParser());
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to set the model whose changes are
+     * reported to the parser.
+     */
+    public void setTrackedModel(TableModel model) {
+        if (parser instanceof Parser) {
+            ((Parser) parser).setTrackedModel(model);
+        }
+
+        precomputedFilters.updateListening();
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to report a change on the tracked
+     * model, before the table filter handles it.
+     */
+    public void modelChanged(TableModelEvent e) {
+        if (parser instanceof Parser) {
+            ((Parser) parser).tableChanged(e);
+        }
+
+        precomputedFilters.trackedModelChanged(e);
+    }
+
     /** Enables / disables the editor, invoked from the filter itself. */
     void setFilterEnabled(boolean enabled) {
     	enabled = enabled && enabledUI;
@@ -413,9 +522,37 @@ public class FilterEditor extends JComponent implements IFilterEditor {
         return filter.attemptEditorFilterUpdate(editorFilter);
     }
 
+    /**
+     * Method invoked by the EditorComponent to obtain the filter for a given
+     * content, if already precomputed.
+     */
+    RowFilter getPrecomputedFilter(Object content) {
+        return precomputedFilters.getFilter(content);
+    }
+
+    /**
+     * Method invoked by the EditorComponent when previously precomputed
+     * filters are not valid anymore.
+     */
+    void clearPrecomputedFilters() {
+        precomputedFilters.clear();
+        precomputedFilters.schedule();
+    }
+
     /** Method invoked by the EditorComponent on request. */
     IParser createParser() {
-        return getParserModel().createParser(this);
+        if (parser instanceof Parser) {
+            // filters from the previous parser stop using its caches
+            ((Parser) parser).setTrackedModel(null);
+        }
+
+        parser = getParserModel().createParser(this);
+        if (parser instanceof Parser) {
+            ((Parser) parser).setTrackedModel(
+                filtersHandler.getTrackedModel());
+        }
+
+        return parser;
     }
 
     /** triggers the popup for an operation starting on the source component. */
@@ -491,16 +628,97 @@ public class FilterEditor extends JComponent implements IFilterEditor {
         setupDownPageKey(component);
         setupDownKey(component);
         setupDownCtrlKey(component);
+        setupSpaceCtrlKey(component);
     }
 
     /** Method called when an element in the choices popup is selected. */
     void popupSelection(Object selection) {
+        Collection<Object> marked = popup.getMarkedChoices(selection);
+        if (!marked.isEmpty()) {
+            selection = createMarkedChoice(marked);
+        }
+
         if (selection != null) {
             setEditorContent(selection);
             filter.consolidateFilter(); // equivalent to press enter
         }
     }
 
+    /**
+     * Creates the choice matching any of the given choices; its filter checks
+     * each row with a single set lookup.
+     */
+    private CustomChoice createMarkedChoice(Collection<Object> choices) {
+        StringBuilder repr = new StringBuilder();
+        for (Object o : choices) {
+            if (repr.length() > 0) {
+                repr.append(", ");
+            }
+
+            repr.append(o);
+        }
+
+        final IChoicesParser parser = editor.getChoicesParser();
+        final Format fmt = format;
+        if ((getRenderer() == null) && modelClass.isEnum()) {
+            // choices are the text of the constants: find them
+            Set<Object> texts = new HashSet<Object>(choices);
+            choices = new ArrayList<Object>();
+            for (Object each : modelClass.getEnumConstants()) {
+                if (texts.contains(ChoicesListModel.toChoice(each, parser, true,
+                                fmt))) {
+                    choices.add(each);
+                }
+            }
+        }
+
+        if ((getRenderer() != null) || modelClass.isEnum()) {
+            return CustomChoice.createAnyOf(choices, repr.toString());
+        }
+
+        // text choices: the value on each row is converted into its choice
+        Comparator<String> comparator = getStringComparator();
+        final StringComparator keys = (comparator instanceof StringComparator)
+            ? ((StringComparator) comparator).copy() : null;
+        final Set<Object> set = new HashSet<Object>();
+        for (Object o : choices) {
+            set.add((keys == null) ? o : keys.getSortKey((String) o));
+        }
+
+        return new CustomChoice(repr.toString()) {
+            private static final long serialVersionUID = -1602958785829343047L;
+
+            @Override public RowFilter getFilter(IFilterEditor ed) {
+                return new ColumnFilter(ed.getModelIndex()) {
+                    // outcome for each value, as obtaining its choice is
+                    // much more expensive than a lookup
+                    private Map<Object, Boolean> outcomes =
+                        new HashMap<Object, Boolean>();
+
+                    @Override public boolean includeValue(Object o) {
+                        Boolean ret = outcomes.get(o);
+                        if (ret == null) {
+                            ret = matches(o);
+                            outcomes.put(o, ret);
+                        }
+
+                        return ret;
+                    }
+
+                    private boolean matches(Object o) {
+                        Object choice = ChoicesListModel.toChoice(o, parser,
+                                true, fmt);
+                        if ((keys != null) && (choice instanceof String)) {
+                            choice = keys.getSortKey((String) choice);
+                        }
+
+                        return set.contains(choice);
+                    }
+                };
+            }
+        };
+    }
+
     /** Shows the popup menu, preselecting the best match. */
     boolean showChoices() {
         if (!popup.isVisible() && editor.isValid()) {
@@ -773,6 +991,28 @@ public class FilterEditor extends JComponent implements IFilterEditor {
             .put(KeyStroke.getKeyStroke(KeyEvent.VK_UP, 0), actionName);
     }
 
+    /**
+     * Action for pressing control + space on a popup: marks or unmarks the
+     * current choice, for a multiple selection.
+     */
+    private void setupSpaceCtrlKey(JComponent component) {
+        String actionName = "FCB_SPACE_CTRL";
+        Action action = new AbstractAction(actionName) {
+
+            private static final long serialVersionUID = 7437925133542863912L;
+
+            public void actionPerformed(ActionEvent e) {
+                if (popup.isPopupFocused()) {
+                    popup.toggleMark();
+                }
+            }
+        };
+        component.getActionMap().put(actionName, action);
+        component.getInputMap(JComponent.WHEN_FOCUSED)
+            .put(KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, Event.CTRL_MASK),
+                actionName);
+    }
+
     private void setupDownCtrlKey(JComponent component) {
         String actionName = "FCB_DOWN_CTRL";
         Action action = new AbstractAction(actionName) {
@@ -841,6 +1081,28 @@ public class FilterEditor extends JComponent implements IFilterEditor {
                                             : delegateFilter.include(entry);
         }
 
+        @Override protected void includeRange(RowFilter.BatchEntry entry,
+                                              int from, int to,
+                                              BitSet result) {
+            if (delegateFilter == null) {
+                result.set(from, to);
+            } else {
+                delegateFilter.include(entry, from, to, result);
+            }
+        }
+
+        @Override protected void includeRows(RowFilter.BatchEntry entry,
+                                             int rows[], int count,
+                                             BitSet result) {
+            if (delegateFilter == null) {
+                for (int i = 0; i < count; i++) {
+                    result.set(rows[i]);
+                }
+            } else {
+                delegateFilter.include(entry, rows, count, result);
+            }
+        }
+
         @Override public void setEnabled(boolean enable) {
             if (enable != isEnabled()) {
             	setFilterEnabled(enable);
@@ -899,6 +1161,7 @@ public class FilterEditor extends JComponent implements IFilterEditor {
                     // filter all the content out
                     if (editor.isValidContent()) {
                         popup.addHistory(editor.getContent());
+                        precomputedFilters.schedule();
                     }
                 }
             }
@@ -29,6 +29,7 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
@@ -67,6 +68,10 @@ import net.coderazzi.filters.gui.Look;
  * <p>To avoid inconsistencies, the space required for the arrow is left blank
  * on the unselected cells<br>
  * </p>
+ *
+ * <p>If the choices have row counts, they are displayed right aligned.</p>
+ *
+ * <p>Choices marked for a multiple selection are displayed as selected.</p>
  */
 class FilterListCellRenderer extends JComponent implements ListCellRenderer {
 
@@ -86,6 +91,9 @@ class FilterListCellRenderer extends JComponent implements ListCellRenderer {
     private boolean focusOnList;
     private int xDeltaBase;
     private int width;
+    // row count to display, if any
+    private String frequency;
+    private final static int FREQUENCY_GAP = 8;
 
     IFilterEditor editor;
     Color fg;
@@ -172,8 +180,21 @@ class FilterListCellRenderer extends JComponent implements ListCellRenderer {
                                                   int     index,
                                                   boolean isSelected,
                                                   boolean cellHasFocus) {
-        setupRenderer(list, value, index, focusOnList && isSelected,
-            cellHasFocus);
+        NarrowedChoicesModel choices = (list.getModel()
+                    instanceof NarrowedChoicesModel)
+            ? (NarrowedChoicesModel) list.getModel() : null;
+        // marked choices are displayed as selected
+        boolean marked = (choices != null) && choices.isMarked(value);
+        setupRenderer(list, value, index,
+            marked || (focusOnList && isSelected), cellHasFocus);
+        frequency = null;
+        if (choices != null) {
+            Integer count = choices.getChoicesModel().getFrequency(value);
+            if (count != null) {
+                frequency = count.toString();
+            }
+        }
+
         width = referenceList.isShowing() ? referenceList.getWidth()
                                           : list.getWidth();
         showArrow = isSelected;
@@ -188,6 +209,7 @@ class FilterListCellRenderer extends JComponent implements ListCellRenderer {
                                               int     finalWidth,
                                               boolean focused) {
         setupRenderer(referenceList, value, -1, focused, false);
+        frequency = null;
         width = finalWidth;
         showArrow = false;
         xDeltaBase = 0;
@@ -252,7 +274,7 @@ class FilterListCellRenderer extends JComponent implements ListCellRenderer {
                                boolean isSelected,
                                boolean cellHasFocus) {
         inner = null;
-        if (renderer != null) {
+        if ((renderer != null) && !ChoicesListModel.isTrailer(value)) {
             try {
                 inner = renderer.getRendererComponent(editor, value,
                         isSelected);
@@ -293,10 +315,27 @@ class FilterListCellRenderer extends JComponent implements ListCellRenderer {
                 height);
             inner.setEnabled(resetEnabled);
         }
+
+        if (frequency != null) {
+            FontMetrics metrics = g.getFontMetrics(inner.getFont());
+            g.setFont(inner.getFont());
+            g.setColor(inner.getForeground());
+            g.drawString(frequency,
+                width - xDeltaBase - X_MARGIN_ARROW
+                - metrics.stringWidth(frequency),
+                ((height - metrics.getHeight()) / 2) + metrics.getAscent());
+        }
     }
 
     @Override public Dimension getPreferredSize() {
-        return inner.getPreferredSize();
+        Dimension ret = inner.getPreferredSize();
+        if (frequency != null) {
+            ret = new Dimension(ret.width + FREQUENCY_GAP
+                        + inner.getFontMetrics(inner.getFont()).stringWidth(
+                            frequency), ret.height);
+        }
+
+        return ret;
     }
 
     @Override public boolean isShowing() {
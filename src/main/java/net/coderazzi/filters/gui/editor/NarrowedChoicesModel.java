@@ -0,0 +1,248 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui.editor;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.swing.AbstractListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import net.coderazzi.filters.gui.CustomChoice;
+
+
+/**
+ * List model displaying the choices of a {@link ChoicesListModel} that start
+ * with a given text (all of them if there is no text).<br>
+ * The choices are never copied: the view keeps the positions of the matching
+ * custom choices (which are expected to be few), and the range of matching
+ * non custom choices, found with a binary search on their sort keys. When
+ * those are not sorted by string keys, the view keeps the positions of all
+ * the matching choices, found linearly.<br>
+ * The LOADING / MORE row is always displayed.<br>
+ * The view keeps also the choices marked for a multiple selection.
+ */
+class NarrowedChoicesModel extends AbstractListModel
+    implements ListDataListener {
+
+    private static final long serialVersionUID = -2719460305637416227L;
+    private ChoicesListModel model;
+    private String prefix;
+    // positions of the matching choices found linearly
+    private int positions[] = new int[0];
+    private int count;
+    // range of matching non custom choices
+    private int from;
+    private int to;
+    private Set<Object> marked = new LinkedHashSet<Object>();
+
+    public NarrowedChoicesModel(ChoicesListModel model) {
+        this.model = model;
+        model.addListDataListener(this);
+    }
+
+    /** Returns the underlying model. */
+    public ChoicesListModel getChoicesModel() {
+        return model;
+    }
+
+    /**
+     * Displays only the choices starting with the given text, or all the
+     * choices if null.
+     */
+    public void narrow(String prefix) {
+        if ((prefix == null) ? (this.prefix != null)
+                             : !prefix.equals(this.prefix)) {
+            int size = getSize();
+            this.prefix = prefix;
+            update();
+            fireContentsChanged(this, 0, Math.max(size, getSize()));
+        }
+    }
+
+    /** Returns true if not all the choices are displayed. */
+    public boolean isNarrowed() {
+        return prefix != null;
+    }
+
+    /**
+     * Marks or unmarks the given choice, returning false if it cannot be
+     * marked: only non custom choices can.
+     */
+    public boolean toggleMark(Object choice) {
+        if ((choice == null) || (choice instanceof CustomChoice)
+                || ChoicesListModel.isTrailer(choice)) {
+            return false;
+        }
+
+        if (!marked.remove(choice)) {
+            marked.add(choice);
+        }
+
+        return true;
+    }
+
+    /** Returns true if the given choice is marked. */
+    public boolean isMarked(Object choice) {
+        return !marked.isEmpty() && marked.contains(choice);
+    }
+
+    /** Returns the marked choices, in marking order. */
+    public Collection<Object> getMarked() {
+        return marked;
+    }
+
+    /** Unmarks all the choices. */
+    public void clearMarks() {
+        marked.clear();
+    }
+
+    /** {@link AbstractListModel} interface. */
+    public int getSize() {
+        if (prefix == null) {
+            return model.getSize();
+        }
+
+        return count + to - from + (hasTrailer() ? 1 : 0);
+    }
+
+    /** {@link AbstractListModel} interface. */
+    public Object getElementAt(int index) {
+        return model.getElementAt(toModel(index));
+    }
+
+    /** Translates a position in this view to a position in the model. */
+    public int toModel(int index) {
+        if ((prefix == null) || (index < 0)) {
+            return index;
+        }
+
+        if (index < count) {
+            return positions[index];
+        }
+
+        index += from - count;
+
+        return (index < to) ? index : (model.getSize() - 1);
+    }
+
+    /**
+     * Translates a position in the model to a position in this view, -1 if
+     * not displayed.
+     */
+    public int toView(int index) {
+        if ((prefix == null) || (index < 0)) {
+            return index;
+        }
+
+        if ((index >= from) && (index < to)) {
+            return count + index - from;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (positions[i] == index) {
+                return i;
+            }
+        }
+
+        if ((index == (model.getSize() - 1)) && hasTrailer()) {
+            return getSize() - 1;
+        }
+
+        return -1;
+    }
+
+    /** {@link ListDataListener} interface. */
+    public void contentsChanged(ListDataEvent e) {
+        if (prefix == null) {
+            fireContentsChanged(this, e.getIndex0(), e.getIndex1());
+        } else {
+            int size = getSize();
+            update();
+            fireContentsChanged(this, 0, Math.max(size, getSize()));
+        }
+    }
+
+    /** {@link ListDataListener} interface. */
+    public void intervalAdded(ListDataEvent e) {
+        if (prefix == null) {
+            fireIntervalAdded(this, e.getIndex0(), e.getIndex1());
+        } else {
+            contentsChanged(e);
+        }
+    }
+
+    /** {@link ListDataListener} interface. */
+    public void intervalRemoved(ListDataEvent e) {
+        if (prefix == null) {
+            fireIntervalRemoved(this, e.getIndex0(), e.getIndex1());
+        } else {
+            contentsChanged(e);
+        }
+    }
+
+    private boolean hasTrailer() {
+        int size = model.getSize();
+
+        return (size > 0)
+                && ChoicesListModel.isTrailer(model.getElementAt(size - 1));
+    }
+
+    /** Finds the positions of the choices matching the current prefix. */
+    private void update() {
+        count = from = to = 0;
+        if (prefix == null) {
+            return;
+        }
+
+        int size = model.getSize() - (hasTrailer() ? 1 : 0);
+        int range[] = model.getPrefixRange(prefix);
+        int linear = size;
+        if (range != null) {
+            linear = model.getCustomChoicesCount();
+            from = range[0];
+            to = range[1];
+        }
+
+        int len = prefix.length();
+        for (int i = 0; i < linear; i++) {
+            String s = model.getElementAt(i).toString();
+            if ((s.length() >= len)
+                    && (ChoiceMatch.getMatchingLength(prefix, s,
+                            model.comparator) == len)) {
+                if (count == positions.length) {
+                    int grown[] = new int[Math.max(16, count * 2)];
+                    System.arraycopy(positions, 0, grown, 0, count);
+                    positions = grown;
+                }
+
+                positions[count++] = i;
+            }
+        }
+    }
+}
@@ -37,22 +37,27 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
 import java.text.Format;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.BorderFactory;
-import javax.swing.JComponent;
 import javax.swing.JList;
 import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
+import javax.swing.ListModel;
 import javax.swing.ListSelectionModel;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.event.ListSelectionListener;
 import javax.swing.event.PopupMenuEvent;
 import javax.swing.event.PopupMenuListener;
 
 import net.coderazzi.filters.gui.ChoiceRenderer;
+import net.coderazzi.filters.gui.CustomChoice;
+import net.coderazzi.filters.gui.FilterSettings;
 import net.coderazzi.filters.gui.IFilterEditor;
 import net.coderazzi.filters.gui.Look;
 
@@ -70,6 +75,8 @@ abstract class PopupComponent implements PopupMenuListener {
     private EditorBoundsWatcher editorBoundsWatcher = new EditorBoundsWatcher();
 
     private ChoicesListModel choicesModel;
+    // view of the choicesModel, displayed in the choicesList
+    private NarrowedChoicesModel narrowedModel;
     private HistoryListModel historyModel;
     JPopupMenu popup;
 
@@ -82,14 +89,24 @@ abstract class PopupComponent implements PopupMenuListener {
     /** This is the total max number of visible rows (history PLUS choices). */
     private int maxVisibleRows;
 
+    /**
+     * Widest row of the content rendered by the user, among the rows measured
+     * so far: the rows visible when the popup is shown, and added choices.
+     */
+    private int widestRow;
+
     /** focusedList always refer to one of choicesList or historyList. */
     JList focusedList;
     JList choicesList;
     JList historyList;
 
 
+    /** Loader of the choices, run the first time they are required. */
+    private Runnable choicesLoader;
+
     public PopupComponent(IFilterEditor editor) {
         choicesModel = new ChoicesListModel();
+        narrowedModel = new NarrowedChoicesModel(choicesModel);
         historyModel = new HistoryListModel();
         createGui(editor);
     }
@@ -101,7 +118,9 @@ abstract class PopupComponent implements PopupMenuListener {
 
     /** Returns the current selection -can be history or and choices-. */
     public Object getSelection() {
-        return focusedList.getSelectedValue();
+        Object ret = focusedList.getSelectedValue();
+
+        return ChoicesListModel.isTrailer(ret) ? null : ret;
     }
 
     /** Returns true if the passed object matches an existing choice. */
@@ -120,11 +139,40 @@ abstract class PopupComponent implements PopupMenuListener {
      * duplicates are removed-
      */
     public void addChoices(Collection<?> choices, IChoicesParser parser) {
+        if (listRenderer.getUserRenderer() != null) {
+            measureChoices(choices);
+        }
+
         if (choicesModel.addContent(choices, parser)) {
             hide();
         }
     }
 
+    /** @see  ChoicesListModel#createPreparer(IChoicesParser) */
+    public IChoicesPreparer createChoicesPreparer(IChoicesParser parser) {
+        return choicesModel.createPreparer(parser);
+    }
+
+    /** Adds content created by a {@link IChoicesPreparer}. */
+    public void addPreparedChoices(Object prepared) {
+        if (choicesModel.addPreparedContent(prepared)) {
+            hide();
+        }
+    }
+
+    /** Removes content from the choices list. */
+    public void removeChoices(Collection<?> choices, IChoicesParser parser) {
+        if (choicesModel.removeContent(choices, parser)) {
+            hide();
+        }
+    }
+
+    /** Adds a listener to the selection changes on both popup lists. */
+    public void addListSelectionListener(ListSelectionListener listener) {
+        choicesList.addListSelectionListener(listener);
+        historyList.addListSelectionListener(listener);
+    }
+
     /** Adds content to the history list. */
     public void addHistory(Object st) {
         if (historyModel.add(st)) {
@@ -132,9 +180,39 @@ abstract class PopupComponent implements PopupMenuListener {
         }
     }
 
+    /**
+     * Sets the loader of the choices, run the first time that the choices are
+     * required (null to remove any existing loader).
+     */
+    public void setChoicesLoader(Runnable loader) {
+        choicesLoader = loader;
+    }
+
+    /** Shows or hides the loading row, displayed after the choices. */
+    public void setChoicesLoading(boolean loading) {
+        choicesModel.setLoading(loading);
+    }
+
+    /** Shows or hides the row indicating that there are more choices. */
+    public void setMoreChoices(boolean more) {
+        choicesModel.setMore(more);
+    }
+
+    /** @see  ChoicesListModel#setFrequencies(Map, IChoicesParser) */
+    public void setChoicesFrequencies(Map<?, Integer> frequencies,
+                                      IChoicesParser   parser) {
+        choicesModel.setFrequencies(frequencies, parser);
+    }
+
+    /** Returns true if the loading row is displayed. */
+    public boolean isChoicesLoading() {
+        return choicesModel.isLoading();
+    }
+
     /** Clears the choices lists. */
     public void clearChoices() {
         choicesModel.clearContent();
+        widestRow = 0;
         hide();
     }
 
@@ -160,6 +238,8 @@ abstract class PopupComponent implements PopupMenuListener {
             return false;
         }
 
+        loadChoices();
+
         prepareGui();
         setPopupFocused(false);
 
@@ -186,6 +266,9 @@ abstract class PopupComponent implements PopupMenuListener {
                                    Comparator     classComparator) {
         hide();
         listRenderer.setUserRenderer(renderer);
+        widestRow = 0;
+        setHorizontalScrollBarPolicy(
+            ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         if (choicesModel.setRenderedContent(classComparator)) {
             historyModel.setStringContent(null);
         }
@@ -195,7 +278,14 @@ abstract class PopupComponent implements PopupMenuListener {
     public void setStringContent(Format             format,
                                  Comparator<String> stringComparator) {
         hide();
-        listRenderer.setUserRenderer(null);
+        if (listRenderer.getUserRenderer() != null) {
+            listRenderer.setUserRenderer(null);
+            setHorizontalScrollBarPolicy(
+                ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+            // discard the rows' size set for the user renderer
+            ensureListRowsHeight();
+        }
+
         if (choicesModel.setStringContent(format, stringComparator)) {
             historyModel.setStringContent(stringComparator);
         }
@@ -231,21 +321,27 @@ abstract class PopupComponent implements PopupMenuListener {
      *          null content
      */
     public ChoiceMatch selectBestMatch(Object hint, boolean perfectMatch) {
+        loadChoices();
         ChoiceMatch historyMatch = historyModel.getClosestMatch(hint,
                 perfectMatch);
         if (choicesModel.getSize() > 0) {
             ChoiceMatch match = choicesModel.getClosestMatch(hint,
                     perfectMatch || historyMatch.exact);
-            if (isVisible() && (match.index >= 0)) {
-                choicesList.ensureIndexIsVisible(match.index);
+            if (!perfectMatch) {
+                narrow(hint, match);
+            }
+
+            int index = narrowedModel.toView(match.index);
+            if (isVisible() && (index >= 0)) {
+                choicesList.ensureIndexIsVisible(index);
             }
 
             if (match.exact
                     || (!historyMatch.exact && (match.len >= historyMatch.len))) {
-                if (match.index >= 0) {
+                if (index >= 0) {
                     if (isVisible()) {
                         focusChoices();
-                        select(match.index);
+                        select(index);
                     }
 
                 }
@@ -264,12 +360,67 @@ abstract class PopupComponent implements PopupMenuListener {
         return historyMatch;
     }
 
+    /**
+     * Marks or unmarks the selected choice, for a multiple selection; returns
+     * false if there is no choice that can be marked.
+     */
+    public boolean toggleMark() {
+        if ((focusedList != choicesList)
+                || !narrowedModel.toggleMark(choicesList.getSelectedValue())) {
+            return false;
+        }
+
+        choicesList.repaint();
+
+        return true;
+    }
+
+    /**
+     * Returns the marked choices, plus the given selection if it is a choice
+     * that could be marked; it is empty if there are no marked choices.
+     */
+    public Collection<Object> getMarkedChoices(Object selection) {
+        Collection<Object> ret = new ArrayList<Object>(
+                narrowedModel.getMarked());
+        if (!ret.isEmpty() && (focusedList == choicesList)
+                && (selection != null) && !ret.contains(selection)
+                && !(selection instanceof CustomChoice)) {
+            ret.add(selection);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Narrows the displayed choices, if so configured, to those starting with
+     * the part of the hint matched by the given match.
+     */
+    private void narrow(Object hint, ChoiceMatch match) {
+        if (FilterSettings.narrowChoices && choicesModel.useFormatter
+                && (hint instanceof String)) {
+            String prefix = (match.index < 0)
+                ? null : ((String) hint).substring(0, match.len);
+            if ((prefix != null) && (prefix.length() == 0)) {
+                prefix = null;
+            }
+
+            int size = narrowedModel.getSize();
+            narrowedModel.narrow(prefix);
+            if (isVisible() && (size != narrowedModel.getSize())) {
+                // adapt the height of the popup to the new choices
+                prepareGui();
+                editorBoundsWatcher.refresh();
+            }
+        }
+    }
+
     /**
      * Returns the text that could complete the given string<br>
      * The completion string is the larger string that matches all existing
      * options starting with the given string.
      */
     public String getCompletion(String s) {
+        loadChoices();
         return choicesModel.getCompletion(s, historyModel.getList());
     }
 
@@ -391,7 +542,7 @@ abstract class PopupComponent implements PopupMenuListener {
             if (last == choicesList.getSelectedIndex()) {
                 last = Math.min(last + last
                             - choicesList.getFirstVisibleIndex(),
-                        choicesModel.getSize() - 1);
+                        narrowedModel.getSize() - 1);
             }
 
             select(last);
@@ -442,6 +593,7 @@ abstract class PopupComponent implements PopupMenuListener {
 
         maxVisibleRows = look.getMaxVisiblePopupRows();
         setMaxHistory(getMaxHistory());
+        widestRow = 0;
 
         if (oldFont != look.getFont()) {
             ensureListRowsHeight();
@@ -479,6 +631,15 @@ abstract class PopupComponent implements PopupMenuListener {
         return (focusedList == historyList) && choicesScrollPane.isVisible();
     }
 
+    /** Runs the choices loader, if any, discarding it afterwards. */
+    private void loadChoices() {
+        if (choicesLoader != null) {
+            Runnable loader = choicesLoader;
+            choicesLoader = null;
+            loader.run();
+        }
+    }
+
     /** Moves the focus to the history list. */
     private void focusHistory() {
         choicesList.clearSelection();
@@ -505,12 +666,33 @@ abstract class PopupComponent implements PopupMenuListener {
     }
 
     /** Configures the passed pane to have the given preferred width. */
-    private void configurePaneSize(JComponent pane, int width) {
+    private void configurePaneSize(JScrollPane pane, int width) {
         Dimension size = pane.getPreferredSize();
         size.width = width;
+        if (pane.getHorizontalScrollBarPolicy()
+                != ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER) {
+            // rows wider than the pane require room for the scrollbar
+            JList list = (JList) pane.getViewport().getView();
+            size.height = list.getPreferredScrollableViewportSize().height;
+            if (list.getModel().getSize() > list.getVisibleRowCount()) {
+                width -= pane.getVerticalScrollBar().getPreferredSize().width;
+            }
+
+            if (list.getPreferredSize().width > width) {
+                size.height += pane.getHorizontalScrollBar().getPreferredSize()
+                        .height;
+            }
+        }
+
         pane.setPreferredSize(size);
     }
 
+    /** Sets the horizontal scrollbar policy of both lists. */
+    private void setHorizontalScrollBarPolicy(int policy) {
+        choicesScrollPane.setHorizontalScrollBarPolicy(policy);
+        historyScrollPane.setHorizontalScrollBarPolicy(policy);
+    }
+
     /**
      * Ensures that the height of the rows in the lists have the required size.
      */
@@ -533,7 +715,7 @@ abstract class PopupComponent implements PopupMenuListener {
     /** Creation of the popup's gui. */
     private void createGui(IFilterEditor editor) {
         MouseHandler mouseHandler = new MouseHandler();
-        choicesList = new JList(choicesModel);
+        choicesList = new JList(narrowedModel);
         choicesList.addMouseMotionListener(mouseHandler);
         choicesList.addMouseListener(mouseHandler);
 
@@ -585,11 +767,11 @@ abstract class PopupComponent implements PopupMenuListener {
         // In addition, the history should not show any of the choices that
         // are visible, when all choices can be displayed at once
         int historySize = historyModel.clearRestrictions(); // restrict none
-        int choicesSize = choicesModel.getSize();
+        int choicesSize = narrowedModel.getSize();
         int maxChoices = Math.min(choicesSize, maxVisibleRows - historySize);
         if ((historySize > 0) && (choicesSize <= maxChoices)) {
             for (int i = 0; i < choicesSize; i++) {
-                if (historyModel.restrict(choicesModel.getElementAt(i))) {
+                if (historyModel.restrict(narrowedModel.getElementAt(i))) {
                     --historySize;
                 }
             }
@@ -612,15 +794,59 @@ abstract class PopupComponent implements PopupMenuListener {
         }
 
         separator.setVisible(showHistory && showChoices);
+        if (listRenderer.getUserRenderer() != null) {
+            fixListRowsSize(choicesList);
+            fixListRowsSize(historyList);
+        }
+    }
+
+    /**
+     * Sets the size of the rows of the given list, when the content is
+     * rendered by the user, measuring only the rows that can be visible at
+     * once; otherwise, the list would render all its rows to find out their
+     * size, each time that its content changes. The width is the widest row
+     * measured so far, wider rows are reached with the horizontal scrollbar.
+     */
+    private void fixListRowsSize(JList list) {
+        ListModel model = list.getModel();
+        int rows = Math.min(model.getSize(), maxVisibleRows);
+        int height = 1;
+        for (int i = 0; i < rows; i++) {
+            Dimension size = listRenderer.getListCellRendererComponent(list,
+                        model.getElementAt(i), i, false, false)
+                    .getPreferredSize();
+            widestRow = Math.max(widestRow, size.width);
+            height = Math.max(height, size.height);
+        }
+
+        list.setFixedCellWidth(Math.max(1, widestRow));
+        list.setFixedCellHeight(height);
+    }
+
+    /**
+     * Updates the widest row with the given choices, rendered by the user;
+     * only as many choices as rows can be visible at once are measured.
+     */
+    private void measureChoices(Collection<?> choices) {
+        int rows = maxVisibleRows;
+        for (Object choice : choices) {
+            if (--rows < 0) {
+                break;
+            }
+
+            widestRow = Math.max(widestRow,
+                    listRenderer.getListCellRendererComponent(choicesList,
+                        choice, 0, false, false).getPreferredSize().width);
+        }
     }
 
     private JScrollPane createScrollPane(JList list) {
         JScrollPane ret = new JScrollPane(list,
                 ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
                 ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
-        ret.setHorizontalScrollBar(null);
         ret.setFocusable(false);
         ret.getVerticalScrollBar().setFocusable(false);
+        ret.getHorizontalScrollBar().setFocusable(false);
         ret.setBorder(null);
 
         return ret;
@@ -631,7 +857,9 @@ abstract class PopupComponent implements PopupMenuListener {
     }
 
     public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {
-        // no need to react to this event
+        // the popup displays again all the choices, until narrowed again
+        narrowedModel.narrow(null);
+        narrowedModel.clearMarks();
     }
 
     public void popupMenuCanceled(PopupMenuEvent e) {
@@ -659,7 +887,9 @@ abstract class PopupComponent implements PopupMenuListener {
         implements MouseMotionListener {
         @Override public void mouseClicked(MouseEvent e) {
             setPopupFocused(true);
-            listSelection(focusedList.getSelectedValue());
+            if (!e.isControlDown() || !toggleMark()) {
+                listSelection(focusedList.getSelectedValue());
+            }
         }
 
         public void mouseMoved(MouseEvent e) {
@@ -681,8 +911,13 @@ abstract class PopupComponent implements PopupMenuListener {
         }
 
         private void listSelection(Object object) {
-            choiceSelected(object);
-            hide();
+            if (object == ChoicesListModel.MORE) {
+                // back to free text edition
+                hide();
+            } else if (object != ChoicesListModel.LOADING) {
+                choiceSelected(object);
+                hide();
+            }
         }
     }
 
@@ -720,6 +955,12 @@ abstract class PopupComponent implements PopupMenuListener {
             return false;
         }
 
+        /** Lays out again the visible popup, whose content has changed. */
+        public void refresh() {
+            showPopup(editor);
+            popup.pack();
+        }
+
         private void handleChange() {
             if (popup.isVisible()) {
                 showPopup(editor);
@@ -0,0 +1,401 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui.editor;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.text.Format;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableModel;
+
+import net.coderazzi.filters.artifacts.ITableModelFilter;
+import net.coderazzi.filters.artifacts.RowFilter;
+import net.coderazzi.filters.artifacts.RowSet;
+import net.coderazzi.filters.gui.CustomChoice;
+import net.coderazzi.filters.gui.FilterSettings;
+
+
+/**
+ * Internal class to precompute, while the table is idle, the rows included by
+ * the history entries and the highlighted popup choice of a
+ * {@link FilterEditor}, so that selecting them later does not require
+ * evaluating the filter on the whole model.<br>
+ * The evaluation is performed in short slices on the event dispatch thread,
+ * as table models are not required to be thread safe. The results are
+ * discarded on any model change, and their memory is bounded by
+ * {@link FilterSettings#precomputedFiltersMemory}.
+ */
+class PrecomputedFilters
+    implements ActionListener, ListSelectionListener, TableModelListener {
+
+    /** Idle time, in milliseconds, before starting any precomputation. */
+    private static final int IDLE_DELAY = 300;
+    /** Pause, in milliseconds, between evaluation slices. */
+    private static final int SLICE_PAUSE = 20;
+    /** Maximum time, in nanoseconds, spent on each evaluation slice. */
+    private static final long SLICE_TIME = 10000000L;
+    /** Number of rows evaluated between time checks. */
+    private static final int SLICE_ROWS = 1024;
+
+    private FilterEditor editor;
+    private Map<Object, Result> results = new HashMap<Object, Result>();
+    private long usedMemory;
+    private Result current;
+    private TableModel model;
+    private boolean listening;
+    private ModelEntry entry = new ModelEntry();
+    private Timer timer;
+
+    PrecomputedFilters(FilterEditor editor) {
+        this.editor = editor;
+        this.timer = new Timer(SLICE_PAUSE, this);
+        this.timer.setInitialDelay(IDLE_DELAY);
+    }
+
+    /**
+     * Returns the precomputed filter for the given content -as stored in the
+     * history, or as a popup choice-, or null if not available.
+     */
+    public RowFilter getFilter(Object content) {
+        if (!results.isEmpty() && (getTableModel() == model)) {
+            Result ret = results.get(getKey(content));
+            if ((ret != null) && ret.isValid()) {
+                return ret;
+            }
+        }
+
+        return null;
+    }
+
+    /** Requests a precomputation, once the table becomes idle. */
+    public void schedule() {
+        if (FilterSettings.precomputeFilters) {
+            timer.restart();
+        }
+    }
+
+    /** Discards all the precomputed results. */
+    public void clear() {
+        for (Result result : results.values()) {
+            result.rows = null;
+        }
+
+        results.clear();
+        usedMemory = 0;
+        current = null;
+    }
+
+    /** {@link ListSelectionListener} interface. */
+    public void valueChanged(ListSelectionEvent e) {
+        if (!e.getValueIsAdjusting()) {
+            schedule();
+        }
+    }
+
+    /** {@link TableModelListener} interface. */
+    public void tableChanged(TableModelEvent e) {
+        clear();
+        schedule();
+    }
+
+    /**
+     * Reports a change on the model tracked by the FiltersHandler, before
+     * the table filter handles it.
+     */
+    public void trackedModelChanged(TableModelEvent e) {
+        if (!listening && (e.getSource() == model)) {
+            tableChanged(e);
+        }
+    }
+
+    /**
+     * Listens directly to the model changes, unless the model is tracked,
+     * and its changes reported, by the FiltersHandler.
+     */
+    public void updateListening() {
+        boolean listen = (model != null)
+                && (model != editor.filtersHandler.getTrackedModel());
+        if (listen != listening) {
+            listening = listen;
+            if (listen) {
+                model.addTableModelListener(this);
+            } else {
+                model.removeTableModelListener(this);
+            }
+        }
+    }
+
+    /** {@link ActionListener} interface, invoked by the timer. */
+    public void actionPerformed(ActionEvent e) {
+        TableModel tableModel = getTableModel();
+        if (tableModel != model) {
+            clear();
+            setModel(tableModel);
+        }
+
+        if ((current == null) && (model != null)) {
+            current = nextCandidate();
+        }
+
+        if (current == null) {
+            timer.stop();
+            if (results.isEmpty()) {
+                setModel(null);
+            }
+        } else if (evaluateSlice()) {
+            current.complete();
+            results.put(current.key, current);
+            usedMemory += current.rows.getMemoryUsage();
+            current = null;
+        }
+    }
+
+    /**
+     * Evaluates the current candidate for some rows, returning true once
+     * all the rows are evaluated.
+     */
+    private boolean evaluateSlice() {
+        long end = System.nanoTime() + SLICE_TIME;
+        int rows = current.rowCount;
+        int from = current.evaluated;
+        while (from < rows) {
+            int to = Math.min(rows, from + SLICE_ROWS);
+            current.delegate.include(entry, from, to, current.evaluating);
+            from = to;
+            if (System.nanoTime() > end) {
+                break;
+            }
+        }
+
+        current.evaluated = from;
+
+        return from == rows;
+    }
+
+    /**
+     * Returns the next content to precompute, releasing first those results
+     * that are not needed anymore. Returns null if there is nothing else to
+     * precompute, or it would exceed the memory budget.
+     */
+    private Result nextCandidate() {
+        List<Object> keys = new ArrayList<Object>();
+        if (editor.popup.isVisible()) {
+            addKey(keys, editor.popup.getSelection());
+        }
+
+        for (Object history : editor.popup.getHistory()) {
+            addKey(keys, history);
+        }
+
+        Iterator<Map.Entry<Object, Result>> it = results.entrySet()
+                .iterator();
+        while (it.hasNext()) {
+            Result result = it.next().getValue();
+            if (!keys.contains(result.key)) {
+                usedMemory -= result.rows.getMemoryUsage();
+                result.rows = null;
+                it.remove();
+            }
+        }
+
+        int rows = model.getRowCount();
+        long budget = FilterSettings.precomputedFiltersMemory * 1024L;
+        for (Object key : keys) {
+            // the evaluation requires, temporarily, one bit per row
+            if (usedMemory + (rows / 8) > budget) {
+                break;
+            }
+
+            if ((rows > 0) && !results.containsKey(key)) {
+                RowFilter filter = editor.editor.createFilter(key);
+                if (filter != null) {
+                    return new Result(key, filter, model, rows);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /** Adds the key associated to the given content, if not yet added. */
+    private void addKey(List<Object> keys, Object content) {
+        Object key = getKey(content);
+        if ((key != null) && !keys.contains(key)) {
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Returns the key for the given content: the content itself for strings
+     * and custom choices, and its formatted text otherwise.
+     */
+    private Object getKey(Object content) {
+        if ((content == null) || (content instanceof String)
+                || (content instanceof CustomChoice)) {
+            return content;
+        }
+
+        Format fmt = editor.getFormat();
+
+        return (fmt == null) ? content.toString() : fmt.format(content);
+    }
+
+    /** Returns the model beneath the table, null if there is no table. */
+    private TableModel getTableModel() {
+        JTable table = editor.filtersHandler.getTable();
+        if (table == null) {
+            return null;
+        }
+
+        TableModel ret = table.getModel();
+        if (ret instanceof ITableModelFilter) {
+            ret = ((ITableModelFilter) ret).getModel();
+        }
+
+        return ret;
+    }
+
+    /** Sets the model to evaluate, listening to its changes. */
+    private void setModel(TableModel tableModel) {
+        if (model != tableModel) {
+            if (listening) {
+                model.removeTableModelListener(this);
+                listening = false;
+            }
+
+            model = tableModel;
+            entry.model = tableModel;
+            updateListening();
+        }
+    }
+
+    /**
+     * Filter wrapping the filter created for a content, and the rows it
+     * includes, kept as a compressed {@link RowSet} once evaluated; those are
+     * used while the model is not modified.
+     */
+    static final class Result extends RowFilter {
+        Object key;
+        RowFilter delegate;
+        TableModel model;
+        BitSet evaluating;
+        RowSet rows;
+        int rowCount;
+        int evaluated;
+
+        Result(Object key, RowFilter delegate, TableModel model, int rowCount) {
+            this.key = key;
+            this.delegate = delegate;
+            this.model = model;
+            this.rowCount = rowCount;
+            this.evaluating = new BitSet(rowCount);
+        }
+
+        /** Compresses the evaluated rows. */
+        void complete() {
+            rows = new RowSet();
+            rows.add(evaluating, 0, rowCount);
+            rows.optimize();
+            evaluating = null;
+        }
+
+        /** Returns true if the precomputed rows are complete and usable. */
+        boolean isValid() {
+            return (rows != null) && (model.getRowCount() == rowCount);
+        }
+
+        @Override public boolean include(RowFilter.Entry entry) {
+            return delegate.include(entry);
+        }
+
+        @Override protected void includeRange(RowFilter.BatchEntry entry,
+                                              int from, int to,
+                                              BitSet result) {
+            if (isValid() && (entry.getModel() == model)) {
+                rows.copyTo(result, from, to);
+            } else {
+                delegate.include(entry, from, to, result);
+            }
+        }
+
+        @Override protected void includeRows(RowFilter.BatchEntry entry,
+                                             int rows[], int count,
+                                             BitSet result) {
+            if (isValid() && (entry.getModel() == model)) {
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (this.rows.contains(row)) {
+                        result.set(row);
+                    }
+                }
+            } else {
+                delegate.include(entry, rows, count, result);
+            }
+        }
+    }
+
+    /** {@link RowFilter.BatchEntry} moving over the rows of the model. */
+    static final class ModelEntry extends RowFilter.BatchEntry {
+        TableModel model;
+        int row;
+
+        @Override public Object getIdentifier() {
+            return row;
+        }
+
+        @Override public int getRow() {
+            return row;
+        }
+
+        @Override public void setRow(int row) {
+            this.row = row;
+        }
+
+        @Override public TableModel getModel() {
+            return model;
+        }
+
+        @Override public Object getValue(int index) {
+            return model.getValueAt(row, index);
+        }
+
+        @Override public int getValueCount() {
+            return model.getColumnCount();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import java.util.Date;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.TableModel;
+
+
+/**
+ * Cache of the date buckets for a column in a {@link TableModel}.<br>
+ * Each cell is converted once into its bucket, as defined by the {@link
+ * DateComparator.BucketComparator} in use, so that date filters just compare
+ * long values.<br>
+ * The cache does not listen to the model: its owner must report, through
+ * {@link #tableChanged(TableModelEvent)}, every model change before any
+ * filter is evaluated on the modified model. Rows appended at the end or
+ * removed from the front are handled incrementally; other structural
+ * changes discard the whole column.<br>
+ * It uses 8 bytes per row, and is only valid for models accessed from the
+ * event dispatch thread.
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+class DateBucketCache {
+
+    /** Bucket stored for null values. */
+    private static final long NULL_BUCKET = Long.MIN_VALUE;
+
+    private TableModel model;
+    private int column;
+    private DateComparator.BucketComparator comparator;
+
+    /** The buckets, the row i being stored at the position start + i. */
+    private long buckets[];
+    private int start;
+    private int rows;
+    private boolean nonDates;
+
+    /** Constructor, for the given model's column. */
+    public DateBucketCache(TableModel model, int column) {
+        this.model = model;
+        this.column = column;
+    }
+
+    /** Returns the model whose column is cached. */
+    public TableModel getModel() {
+        return model;
+    }
+
+    /** Returns true if the value at the given row is null. */
+    public boolean isNull(int row) {
+        return buckets[start + row] == NULL_BUCKET;
+    }
+
+    /** Returns the bucket for the given row. */
+    public long getBucket(int row) {
+        return buckets[start + row];
+    }
+
+    /** Reports a change on the model, that must be the cached one. */
+    public void tableChanged(TableModelEvent e) {
+        if (nonDates) {
+            // appended rows do not remove the existing non Date values
+            nonDates = e.getType() == TableModelEvent.INSERT;
+        } else if (buckets != null) {
+            int first = e.getFirstRow();
+            int last = e.getLastRow();
+            int modelRows = model.getRowCount();
+            if ((first == TableModelEvent.HEADER_ROW) || (first < 0)
+                    || (last == Integer.MAX_VALUE)) {
+                buckets = null;
+            } else if ((e.getType() != TableModelEvent.UPDATE)
+                    && (rows == modelRows)) {
+                // already recomputed for the current model
+            } else if (e.getType() == TableModelEvent.INSERT) {
+                if ((first != rows) || (last != (modelRows - 1))
+                        || !append(first, last)) {
+                    buckets = null;
+                }
+            } else if (e.getType() == TableModelEvent.DELETE) {
+                if ((first == 0) && (last < rows)
+                        && ((rows - last - 1) == modelRows)) {
+                    removeFirst(last + 1);
+                } else {
+                    buckets = null;
+                }
+            } else if ((e.getColumn() == TableModelEvent.ALL_COLUMNS)
+                    || (e.getColumn() == column)) {
+                if (last >= rows) {
+                    buckets = null;
+                } else {
+                    for (; first <= last; first++) {
+                        if (!update(first)) {
+                            buckets = null;
+
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ensures that the buckets are computed for the given comparator; it is a
+     * fast operation if the buckets are already available.
+     *
+     * @return  false if the column contains non Date values
+     */
+    boolean prepare(DateComparator.BucketComparator comparator) {
+        if (nonDates) {
+            return false;
+        }
+
+        int modelRows = model.getRowCount();
+        if ((buckets == null) || (comparator != this.comparator)
+                || (rows != modelRows)) {
+            this.comparator = comparator;
+            buckets = new long[modelRows];
+            start = rows = 0;
+            if ((modelRows > 0) && !append(0, modelRows - 1)) {
+                buckets = null;
+                nonDates = true;
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Computes the buckets of the rows appended at the end of the model.
+     *
+     * @return  false if any value is not a Date
+     */
+    private boolean append(int first, int last) {
+        int required = last + 1;
+        if ((start + required) > buckets.length) {
+            long target[] = buckets;
+            if (required > ((buckets.length / 3) * 2)) {
+                target = new long[required + (required / 2) + 1];
+            }
+
+            System.arraycopy(buckets, start, target, 0, rows);
+            buckets = target;
+            start = 0;
+        }
+
+        for (rows = required; first <= last; first++) {
+            if (!update(first)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** Handles the removal of the given number of rows from the front. */
+    private void removeFirst(int count) {
+        start += count;
+        rows -= count;
+        if (rows == 0) {
+            start = 0;
+        }
+    }
+
+    /** Updates the bucket for the given row; returns false if not a Date. */
+    private boolean update(int row) {
+        Object o = model.getValueAt(row, column);
+        long bucket;
+        if (o == null) {
+            bucket = NULL_BUCKET;
+        } else if (o instanceof Date) {
+            bucket = comparator.getBucket(((Date) o).getTime());
+            if (bucket == NULL_BUCKET) {
+                // cannot be distinguished from null values
+                return false;
+            }
+        } else {
+            return false;
+        }
+
+        buckets[start + row] = bucket;
+
+        return true;
+    }
+}
@@ -30,6 +30,7 @@ import java.text.Format;
 import java.util.Calendar;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.TimeZone;
 
 
 /**
@@ -50,11 +51,7 @@ abstract public class DateComparator implements Comparator<Date> {
         calendar.setTimeInMillis(new Date().getTime());
         if (change(calendar, dateFormat, Calendar.MILLISECOND)) {
             // Milliseconds affect the output, full comparison
-            return new DateComparator() {
-                @Override public long diff(Date o1, Date o2) {
-                    return o1.compareTo(o2);
-                }
-            };
+            return new TimeComparator(1);
         }
 
         int divisor = 0;
@@ -72,8 +69,8 @@ abstract public class DateComparator implements Comparator<Date> {
             return new YearComparator(calendar);
         } else {
             // nothing affects the output, great formatter!
-            return new DateComparator() {
-                @Override public long diff(Date o1, Date o2) {
+            return new BucketComparator() {
+                @Override public long getBucket(long time) {
                     return 0;
                 }
             };
@@ -105,44 +102,114 @@ abstract public class DateComparator implements Comparator<Date> {
         return (diff == 0) ? 0 : ((diff > 0) ? 1 : -1);
     }
 
+    /**
+     * Compares two non null dates, given as milliseconds since the epoch.
+     *
+     * @see  #compare(Date, Date)
+     */
+    public int compare(long time1, long time2) {
+        long diff = diff(time1, time2);
+
+        return (diff == 0) ? 0 : ((diff > 0) ? 1 : -1);
+    }
+
     public abstract long diff(Date o1, Date o2);
 
+    /**
+     * Returns the difference between two dates, given as milliseconds since
+     * the epoch. Subclasses should override it to avoid creating the Date
+     * instances.
+     */
+    public long diff(long time1, long time2) {
+        return diff(new Date(time1), new Date(time2));
+    }
+
+    /**
+     * DateComparator that maps each date into a bucket -a long value-, so that
+     * dates are compared by comparing their buckets.<br>
+     * The buckets are computed without Calendar instances, so these
+     * comparators are thread safe and do not allocate memory.
+     */
+    abstract static class BucketComparator extends DateComparator {
+
+        /** Returns the bucket for the given milliseconds since the epoch. */
+        public abstract long getBucket(long time);
+
+        @Override public long diff(Date o1, Date o2) {
+            return getBucket(o1.getTime()) - getBucket(o2.getTime());
+        }
+
+        @Override public long diff(long time1, long time2) {
+            return getBucket(time1) - getBucket(time2);
+        }
+    }
+
     /**
      * DateComparator when the difference relies on time fields (seconds,
      * minutes, hours).<br>
      * We divide the time to set out the unneeded information, before comparing
      */
-    static class TimeComparator extends DateComparator {
+    static class TimeComparator extends BucketComparator {
         int divisor;
 
         public TimeComparator(int divisor) {
             this.divisor = divisor;
         }
 
-        @Override public long diff(Date o1, Date o2) {
-            return (o1.getTime() / divisor) - (o2.getTime() / divisor);
+        @Override public long getBucket(long time) {
+            return time / divisor;
         }
     }
 
-    /** DateComparator that simply compares the year's fields. */
-    static class YearComparator extends DateComparator {
-        Calendar calendar;
+    /**
+     * DateComparator that simply compares the year's fields.<br>
+     * The fields are computed on the proleptic gregorian calendar, using the
+     * time zone of the calendar provided on construction.
+     */
+    static class YearComparator extends BucketComparator {
+        private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+        TimeZone timeZone;
 
         public YearComparator(Calendar calendar) {
-            this.calendar = calendar;
+            this.timeZone = calendar.getTimeZone();
         }
 
-        @Override public long diff(Date o1, Date o2) {
-            calendar.setTime(o1);
+        @Override public long getBucket(long time) {
+            return getYear(getEpochDay(time));
+        }
 
-            long base = time();
-            calendar.setTime(o2);
+        /** Returns the local days since the epoch. */
+        long getEpochDay(long time) {
+            long local = time + timeZone.getOffset(time);
+            long day = local / DAY_MILLIS;
 
-            return base - time();
+            return ((local % DAY_MILLIS) < 0) ? (day - 1) : day;
         }
 
-        long time() {
-            return calendar.get(Calendar.YEAR);
+        /** Returns the year and month (0 based) as year * 12 + month. */
+        static long getYearMonth(long epochDay) {
+            // civil from days algorithm, with years starting on March 1st
+            long z = epochDay + 719468;
+            long era = ((z >= 0) ? z : (z - 146096)) / 146097;
+            long dayOfEra = z - (era * 146097);
+            long yearOfEra = (dayOfEra - (dayOfEra / 1460)
+                        + (dayOfEra / 36524) - (dayOfEra / 146096)) / 365;
+            long dayOfYear = dayOfEra
+                    - ((365 * yearOfEra) + (yearOfEra / 4) - (yearOfEra / 100));
+            long marchMonth = ((5 * dayOfYear) + 2) / 153;
+            long month = (marchMonth < 10) ? (marchMonth + 2)
+                                           : (marchMonth - 10);
+            long year = yearOfEra + (era * 400) + ((month < 2) ? 1 : 0);
+
+            return (year * 12) + month;
+        }
+
+        static long getYear(long epochDay) {
+            long yearMonth = getYearMonth(epochDay);
+
+            return (yearMonth >= 0) ? (yearMonth / 12)
+                                    : (((yearMonth + 1) / 12) - 1);
         }
     }
 
@@ -152,9 +219,8 @@ abstract public class DateComparator implements Comparator<Date> {
             super(calendar);
         }
 
-        @Override long time() {
-            return (calendar.get(Calendar.YEAR) * 12)
-                    + calendar.get(Calendar.MONTH);
+        @Override public long getBucket(long time) {
+            return getYearMonth(getEpochDay(time));
         }
     }
 
@@ -164,9 +230,8 @@ abstract public class DateComparator implements Comparator<Date> {
             super(calendar);
         }
 
-        @Override long time() {
-            return (calendar.get(Calendar.YEAR) * 400)
-                    + calendar.get(Calendar.DAY_OF_YEAR);
+        @Override public long getBucket(long time) {
+            return getEpochDay(time);
         }
     }
 }
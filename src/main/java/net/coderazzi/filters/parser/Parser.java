@@ -28,14 +28,22 @@ package net.coderazzi.filters.parser;
 import java.text.Format;
 import java.text.ParseException;
 
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.TableModel;
+
 import net.coderazzi.filters.IParser;
+import net.coderazzi.filters.artifacts.ColumnFilter;
+import net.coderazzi.filters.artifacts.IPrimitiveModel;
 import net.coderazzi.filters.artifacts.RowFilter;
 
 
@@ -75,6 +83,11 @@ import net.coderazzi.filters.artifacts.RowFilter;
  * </ul>
  *
  * <p>In addition, providing no operator will behave as the operator ~</p>
+ *
+ * <p>The filters are cached per expression, so parsing again a recent
+ * expression is immediate; as the parser is created for a given format,
+ * comparator and ignore case flag, and recreated when any of them changes,
+ * the cache does not need to be invalidated.</p>
  */
 public class Parser implements IParser {
 
@@ -83,12 +96,17 @@ public class Parser implements IParser {
     boolean ignoreCase;
     Comparator<String> stringComparator;
     int modelIndex;
+    DateBucketCache bucketCache;
     static HtmlHandler htmlHandler = new HtmlHandler();
     private static Map<String, IOperand> operands;
     private static IOperand wildcardOperand;
     private static WildcardOperand instantOperand;
     private static Pattern expressionMatcher;
-    private static StringBuilder escapeBuffer = new StringBuilder();
+    private static final int CACHE_SIZE = 64;
+    private ExpressionsCache<RowFilter> filters =
+        new ExpressionsCache<RowFilter>();
+    private ExpressionsCache<InstantFilter> instantFilters =
+        new ExpressionsCache<InstantFilter>();
 
     public Parser(Format             format,
                   Comparator         classComparator,
@@ -102,8 +120,31 @@ public class Parser implements IParser {
         this.modelIndex = modelIndex;
     }
 
+    /**
+     * Sets the model whose changes are reported to this parser, via {@link
+     * #tableChanged(TableModelEvent)}, before any of its filters is applied
+     * to the modified model. It enables caching the date buckets for the
+     * column; the cache is discarded if the model is null.
+     */
+    public void setTrackedModel(TableModel model) {
+        bucketCache = (model == null) ? null
+                                      : new DateBucketCache(model, modelIndex);
+    }
+
+    /** Reports a change on the model set as tracked. */
+    public void tableChanged(TableModelEvent e) {
+        if (bucketCache != null) {
+            bucketCache.tableChanged(e);
+        }
+    }
+
     /** {@link IParser} interface. */
     public RowFilter parseText(String expression) throws ParseException {
+        RowFilter ret = filters.get(expression);
+        if (ret != null) {
+            return ret;
+        }
+
         Matcher matcher = expressionMatcher.matcher(expression);
         if (matcher.matches()) {
             // all expressions match!
@@ -113,7 +154,10 @@ public class Parser implements IParser {
                 op = wildcardOperand;
             }
 
-            return op.create(this, matcher.group(3).trim());
+            ret = op.create(this, matcher.group(3).trim());
+            filters.put(expression, ret);
+
+            return ret;
         }
 
         throw new ParseException("", 0);
@@ -123,6 +167,11 @@ public class Parser implements IParser {
     public InstantFilter parseInstantText(String expression)
                                    throws ParseException {
     	expression = expression.trim();
+        InstantFilter ret = instantFilters.get(expression);
+        if (ret != null) {
+            return ret;
+        }
+
         Matcher matcher = expressionMatcher.matcher(expression);
         if (matcher.matches()) {
             // all expressions match!
@@ -132,10 +181,11 @@ public class Parser implements IParser {
                 op = instantOperand;
             }
 
-            InstantFilter ret = new InstantFilter();
+            ret = new InstantFilter();
             ret.filter = op.create(this, matcher.group(3));
             ret.expression = (op == instantOperand)
                 ? instantOperand.getAppliedExpression(expression) : expression;
+            instantFilters.put(expression, ret);
 
             return ret;
         }
@@ -153,6 +203,8 @@ public class Parser implements IParser {
     	expression = expression.trim();
         Matcher matcher = expressionMatcher.matcher(expression);
         if (matcher.matches()) {
+            // local buffer: choices can be escaped from different threads
+            StringBuilder escapeBuffer = new StringBuilder();
             String operator = matcher.group(1);
             int lastAdded = 0;
             if (operator != null) {
@@ -173,13 +225,26 @@ public class Parser implements IParser {
             if (escapeBuffer.length() > 0) {
                 escapeBuffer.append(expression.substring(lastAdded, total));
                 expression = escapeBuffer.toString();
-                escapeBuffer.delete(0, escapeBuffer.length());
             }
         }
 
         return expression;
     }
 
+    /** Least recently used cache of the filters created per expression. */
+    static class ExpressionsCache<T> extends LinkedHashMap<String, T> {
+        private static final long serialVersionUID = 4427393781251446703L;
+
+        ExpressionsCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override protected boolean removeEldestEntry(
+                Map.Entry<String, T> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    }
+
     /** Internal interface, to be implemented by all operands. */
     interface IOperand {
         RowFilter create(Parser self, String right) throws ParseException;
@@ -201,7 +266,7 @@ public class Parser implements IParser {
 
                 Object o = self.format.parseObject(right);
                 if (o != null) {
-                    return createOperator(o, self.modelIndex, self.comparator);
+                    return createOperator(o, self);
                 }
             }
 
@@ -209,17 +274,14 @@ public class Parser implements IParser {
         }
 
         /** Operator fine for given type, apply it. */
-        private RowFilter createOperator(final Object     right,
-                                         final int        modelIndex,
-                                         final Comparator comparator) {
-            return new RowFilter() {
-                @Override public boolean include(Entry entry) {
-                    Object left = entry.getValue(modelIndex);
-                    if (left instanceof String){
-                    	left = htmlHandler.stripHtml((String)left);
-                    }
-                    return (left != null)
-                            && matches(comparator.compare(left, right));
+        private RowFilter createOperator(Object right, Parser self) {
+            return new ComparisonFilter(self, right) {
+                @Override boolean matches(int comparison) {
+                    return ComparisonOperand.this.matches(comparison);
+                }
+
+                @Override boolean matchesNull() {
+                    return false;
                 }
             };
         }
@@ -230,17 +292,18 @@ public class Parser implements IParser {
                 final int           modelIndex,
                 final FormatWrapper format,
                 final Comparator    stringComparator) {
-            return new RowFilter() {
-                @Override public boolean include(Entry entry) {
-                    Object left = entry.getValue(modelIndex);
+            final StringOperand operand = new StringOperand(right,
+                    stringComparator);
+
+            return new ColumnFilter(modelIndex) {
+                @Override public boolean includeValue(Object left) {
                     if (left == null) {
                         return false;
                     }
 
                     String s = format.format(left);
 
-                    return (s.length() > 0)
-                            && matches(stringComparator.compare(s, right));
+                    return (s.length() > 0) && matches(operand.compare(s));
                 }
             };
         }
@@ -278,32 +341,26 @@ public class Parser implements IParser {
                 throw new ParseException("", 0);
             }
 
-            return createOperator(o, self.modelIndex, self.comparator);
+            return createOperator(o, self);
         }
 
         /** Operator fine for given type, apply it. */
-        private RowFilter createOperator(final Object     right,
-                                         final int        modelIndex,
-                                         final Comparator comparator) {
-            return new RowFilter() {
-                @Override public boolean include(Entry entry) {
-                    Object left = entry.getValue(modelIndex);
-                    if (left instanceof String){
-                    	left = htmlHandler.stripHtml((String)left);
-                    }
-                    boolean value = (left != null)
-                            && (0 == comparator.compare(left, right));
-                    return value == expected;
+        private RowFilter createOperator(Object right, Parser self) {
+            return new ComparisonFilter(self, right) {
+                @Override boolean matches(int comparison) {
+                    return (comparison == 0) == expected;
+                }
+
+                @Override boolean matchesNull() {
+                    return !expected;
                 }
             };
         }
 
         /** No right operand give, comparing against 'null'. */
         private RowFilter createNullOperator(final int modelIndex) {
-            return new RowFilter() {
-                @Override public boolean include(Entry entry) {
-                    Object left = entry.getValue(modelIndex);
-
+            return new ColumnFilter(modelIndex) {
+                @Override public boolean includeValue(Object left) {
                     return expected == (left == null);
                 }
             };
@@ -315,18 +372,232 @@ public class Parser implements IParser {
                 final int           modelIndex,
                 final FormatWrapper format,
                 final Comparator    stringComparator) {
-            return new RowFilter() {
-                @Override public boolean include(Entry entry) {
-                    Object left = entry.getValue(modelIndex);
+            final StringOperand operand = new StringOperand(right,
+                    stringComparator);
+
+            return new ColumnFilter(modelIndex) {
+                @Override public boolean includeValue(Object left) {
                     String value = format.format(left);
 
-                    return expected = (stringComparator.compare(value, right)
-                                    == 0);
+                    return expected == (operand.compare(value) == 0);
                 }
             };
         }
     }
 
+    /**
+     * Right operand on string comparisons; if the comparator is a {@link
+     * StringComparator}, the operand's sort key is computed only once.
+     */
+    static class StringOperand {
+        private String right;
+        private Comparator comparator;
+        private StringComparator keyComparator;
+        private Comparable key;
+
+        StringOperand(String right, Comparator comparator) {
+            this.right = right;
+            this.comparator = comparator;
+            if (comparator instanceof StringComparator) {
+                keyComparator = (StringComparator) comparator;
+                key = keyComparator.getSortKey(right);
+            }
+        }
+
+        /** Compares the given string with the operand. */
+        public int compare(String left) {
+            return (keyComparator == null)
+                ? comparator.compare(left, right)
+                : keyComparator.compareToKey(left, key);
+        }
+    }
+
+    /**
+     * ColumnFilter comparing the column's values against a parsed operand.<br>
+     * If the model is a {@link IPrimitiveModel} and the comparator is the
+     * natural one (or a {@link DateComparator} for dates), the comparison
+     * is performed directly on the primitive values. Dates on the model
+     * tracked by the parser are compared using its cached buckets.
+     */
+    abstract static class ComparisonFilter extends ColumnFilter {
+        private Object right;
+        private Comparator comparator;
+        private Class<?> primitiveClass;
+        private long rightLong;
+        private double rightDouble;
+        private DateComparator.BucketComparator bucketComparator;
+        private Parser parser;
+
+        ComparisonFilter(Parser parser, Object right) {
+            super(parser.modelIndex);
+            this.parser = parser;
+            this.right = right;
+            this.comparator = parser.comparator;
+            if (comparator instanceof ComparableComparator) {
+                if (right instanceof Integer) {
+                    primitiveClass = int.class;
+                    rightLong = ((Integer) right).longValue();
+                } else if (right instanceof Long) {
+                    primitiveClass = long.class;
+                    rightLong = ((Long) right).longValue();
+                } else if (right instanceof Double) {
+                    primitiveClass = double.class;
+                    rightDouble = ((Double) right).doubleValue();
+                }
+            } else if ((comparator instanceof DateComparator)
+                    && (right instanceof Date)) {
+                primitiveClass = Date.class;
+                rightLong = ((Date) right).getTime();
+                if (comparator instanceof DateComparator.BucketComparator) {
+                    bucketComparator = (DateComparator.BucketComparator)
+                        comparator;
+                    rightLong = bucketComparator.getBucket(rightLong);
+                }
+            }
+        }
+
+        /** Returns the outcome for a non null value, given its comparison. */
+        abstract boolean matches(int comparison);
+
+        /** Returns the outcome for null values. */
+        abstract boolean matchesNull();
+
+        @Override public boolean include(Entry entry) {
+            IPrimitiveModel model = getPrimitiveModel(entry);
+            if (model != null) {
+                return includePrimitive(model, entry.getRow());
+            }
+
+            DateBucketCache cache = getBucketCache(entry);
+            if (cache != null) {
+                return includeBucket(cache, entry.getRow());
+            }
+
+            return super.include(entry);
+        }
+
+        @Override protected void includeRange(RowFilter.BatchEntry entry,
+                                              int from, int to,
+                                              BitSet result) {
+            IPrimitiveModel model = getPrimitiveModel(entry);
+            if (model != null) {
+                for (int row = from; row < to; row++) {
+                    if (includePrimitive(model, row)) {
+                        result.set(row);
+                    }
+                }
+            } else {
+                DateBucketCache cache = getBucketCache(entry);
+                if (cache != null) {
+                    for (int row = from; row < to; row++) {
+                        if (includeBucket(cache, row)) {
+                            result.set(row);
+                        }
+                    }
+                } else {
+                    super.includeRange(entry, from, to, result);
+                }
+            }
+        }
+
+        @Override protected void includeRows(RowFilter.BatchEntry entry,
+                                             int rows[], int count,
+                                             BitSet result) {
+            IPrimitiveModel model = getPrimitiveModel(entry);
+            DateBucketCache cache = (model == null) ? getBucketCache(entry)
+                                                    : null;
+            if ((model == null) && (cache == null)) {
+                super.includeRows(entry, rows, count, result);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if ((model == null) ? includeBucket(cache, row)
+                                        : includePrimitive(model, row)) {
+                        result.set(row);
+                    }
+                }
+            }
+        }
+
+        @Override public boolean includeValue(Object left) {
+            if (left instanceof String){
+            	left = htmlHandler.stripHtml((String)left);
+            }
+            return (left == null) ? matchesNull()
+                                  : matches(comparator.compare(left, right));
+        }
+
+        /**
+         * Returns the entry's model as a {@link IPrimitiveModel}, if the
+         * filtered column can be directly compared, or null otherwise.
+         */
+        private IPrimitiveModel getPrimitiveModel(Entry entry) {
+            if (primitiveClass != null) {
+                Object model = entry.getModel();
+                if ((model instanceof IPrimitiveModel)
+                        && (((IPrimitiveModel) model).getPrimitiveClass(column)
+                            == primitiveClass)) {
+                    return (IPrimitiveModel) model;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Returns the parser's {@link DateBucketCache}, if the filter compares
+         * dates, the entry's model is the tracked one and the column contains
+         * only dates.
+         */
+        private DateBucketCache getBucketCache(Entry entry) {
+            if (bucketComparator != null) {
+                DateBucketCache cache = parser.bucketCache;
+                if ((cache != null) && (entry.getModel() == cache.getModel())
+                        && cache.prepare(bucketComparator)) {
+                    return cache;
+                }
+            }
+
+            return null;
+        }
+
+        /** Evaluates the filter directly on the primitive value. */
+        private boolean includePrimitive(IPrimitiveModel model, int row) {
+            if (model.isNull(row, column)) {
+                return matchesNull();
+            }
+
+            int comparison;
+            if (primitiveClass == int.class) {
+                comparison = compare(model.getInt(row, column), rightLong);
+            } else if (primitiveClass == long.class) {
+                comparison = compare(model.getLong(row, column), rightLong);
+            } else if (primitiveClass == double.class) {
+                comparison = Double.compare(model.getDouble(row, column),
+                        rightDouble);
+            } else if (bucketComparator != null) {
+                comparison = compare(bucketComparator.getBucket(
+                            model.getTime(row, column)), rightLong);
+            } else {
+                comparison = ((DateComparator) comparator).compare(
+                        model.getTime(row, column), rightLong);
+            }
+
+            return matches(comparison);
+        }
+
+        /** Evaluates the filter on the cached date bucket. */
+        private boolean includeBucket(DateBucketCache cache, int row) {
+            return cache.isNull(row) ? matchesNull()
+                                     : matches(compare(cache.getBucket(row),
+                                             rightLong));
+        }
+
+        private static int compare(long left, long right) {
+            return (left < right) ? -1 : ((left == right) ? 0 : 1);
+        }
+    }
+
     /** Operand for regular expressions. */
     static class REOperand implements IOperand {
         boolean equals;
@@ -348,10 +619,9 @@ public class Parser implements IParser {
             final int modelIndex = self.modelIndex;
             final FormatWrapper format = self.format;
 
-            return new RowFilter() {
+            return new ColumnFilter(modelIndex) {
 
-                @Override public boolean include(Entry entry) {
-                    Object o = entry.getValue(modelIndex);
+                @Override public boolean includeValue(Object o) {
                     String left = format.format(o);
 
                     return equals == pattern.matcher(left).matches();
@@ -0,0 +1,255 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import java.text.CollationKey;
+import java.text.Collator;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * {@link Comparator} for Strings able to precompute sort keys.<br>
+ * Comparing the sort keys of two strings is equivalent to comparing the
+ * strings, but cheaper, so the keys can be computed once and cached when the
+ * same strings are compared many times (sorting, binary searches).<br>
+ * Three variants are supported:
+ *
+ * <ul>
+ *   <li>case sensitive: the key is the string itself.</li>
+ *   <li>case insensitive: the key is the case folded string, with the same
+ *     semantics as {@link String#compareToIgnoreCase(String)}.</li>
+ *   <li>collation: the key is a {@link CollationKey}.</li>
+ * </ul>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public abstract class StringComparator implements Comparator<String> {
+
+    private static final char UNKNOWN = '\uffff';
+
+    private static StringComparator caseSensitive;
+    private static StringComparator ignoreCase;
+
+    // folded characters, computed on demand, see foldChar
+    private char folded[];
+    private Map<Character, Character> foldedOthers;
+    private StringBuilder representatives;
+
+    /** Returns the singleton comparator for the given case flag. */
+    public static StringComparator getInstance(boolean ignoreCase) {
+        if (ignoreCase) {
+            if (StringComparator.ignoreCase == null) {
+                StringComparator.ignoreCase = new IgnoreCaseComparator();
+            }
+
+            return StringComparator.ignoreCase;
+        }
+
+        if (caseSensitive == null) {
+            caseSensitive = new CaseSensitiveComparator();
+        }
+
+        return caseSensitive;
+    }
+
+    /** Returns a comparator based on the given {@link Collator}. */
+    public static StringComparator getInstance(Collator collator) {
+        return new CollatorComparator(collator);
+    }
+
+    /** Returns the sort key for the given string. */
+    public abstract Comparable getSortKey(String s);
+
+    /**
+     * Returns a comparator equivalent to this one, that can be used from a
+     * different thread; sort keys of both comparators can be compared.
+     */
+    public StringComparator copy() {
+        return this;
+    }
+
+    /**
+     * Compares the given string with the string associated to the given sort
+     * key; it is equivalent (but normally cheaper) to compare the sort keys.
+     */
+    public int compareToKey(String s, Comparable key) {
+        return getSortKey(s).compareTo(key);
+    }
+
+    /**
+     * Returns the character representing all the characters that compare as
+     * equal to the given one, so that two characters can be compared without
+     * creating strings.<br>
+     * The default implementation compares the character, the first time that
+     * it is folded, with the representatives found so far.
+     */
+    public char foldChar(char c) {
+        if (c < 256) {
+            if (folded == null) {
+                folded = new char[256];
+                for (int i = 0; i < 256; i++) {
+                    folded[i] = UNKNOWN;
+                }
+            }
+
+            char ret = folded[c];
+            if (ret == UNKNOWN) {
+                ret = folded[c] = findRepresentative(c);
+            }
+
+            return ret;
+        }
+
+        if (foldedOthers == null) {
+            foldedOthers = new HashMap<Character, Character>();
+        }
+
+        Character ret = foldedOthers.get(c);
+        if (ret == null) {
+            ret = findRepresentative(c);
+            foldedOthers.put(c, ret);
+        }
+
+        return ret;
+    }
+
+    private char findRepresentative(char c) {
+        if (representatives == null) {
+            representatives = new StringBuilder();
+        }
+
+        String s = String.valueOf(c);
+        int len = representatives.length();
+        for (int i = 0; i < len; i++) {
+            char r = representatives.charAt(i);
+            if (compare(String.valueOf(r), s) == 0) {
+                return r;
+            }
+        }
+
+        representatives.append(c);
+
+        return c;
+    }
+
+    /** Comparator for case sensitive comparisons. */
+    static class CaseSensitiveComparator extends StringComparator {
+        public int compare(String o1, String o2) {
+            return o1.compareTo(o2);
+        }
+
+        @Override public Comparable getSortKey(String s) {
+            return s;
+        }
+
+        @Override public int compareToKey(String s, Comparable key) {
+            return s.compareTo((String) key);
+        }
+
+        @Override public char foldChar(char c) {
+            return c;
+        }
+    }
+
+    /** Comparator for case insensitive comparisons. */
+    static class IgnoreCaseComparator extends StringComparator {
+        public int compare(String o1, String o2) {
+            return o1.compareToIgnoreCase(o2);
+        }
+
+        @Override public Comparable getSortKey(String s) {
+            int len = s.length();
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (fold(c) != c) {
+                    // only allocate for strings requiring folding
+                    char chars[] = s.toCharArray();
+                    for (int j = i; j < len; j++) {
+                        chars[j] = fold(chars[j]);
+                    }
+
+                    return new String(chars);
+                }
+            }
+
+            return s;
+        }
+
+        @Override public int compareToKey(String s, Comparable key) {
+            String folded = (String) key;
+            int len = s.length();
+            int keyLen = folded.length();
+            int min = Math.min(len, keyLen);
+            for (int i = 0; i < min; i++) {
+                char c1 = fold(s.charAt(i));
+                char c2 = folded.charAt(i);
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+
+            return len - keyLen;
+        }
+
+        @Override public char foldChar(char c) {
+            return fold(c);
+        }
+
+        /** Folding with the same semantics as String.compareToIgnoreCase. */
+        static char fold(char c) {
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+    }
+
+    /** Comparator based on a {@link Collator}. */
+    static class CollatorComparator extends StringComparator {
+        private Collator collator;
+
+        CollatorComparator(Collator collator) {
+            this.collator = collator;
+        }
+
+        public int compare(String o1, String o2) {
+            return collator.compare(o1, o2);
+        }
+
+        @Override public Comparable getSortKey(String s) {
+            return collator.getCollationKey(s);
+        }
+
+        @Override public int compareToKey(String s, Comparable key) {
+            return collator.compare(s, ((CollationKey) key).getSourceString());
+        }
+
+        @Override public StringComparator copy() {
+            // collators are not thread safe
+            return new CollatorComparator((Collator) collator.clone());
+        }
+    }
+}